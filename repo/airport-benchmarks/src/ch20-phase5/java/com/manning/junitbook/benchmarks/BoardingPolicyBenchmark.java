@@ -0,0 +1,149 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.benchmarks;
+
+import com.manning.junitbook.airport.BusinessFlight;
+import com.manning.junitbook.airport.EconomyFlight;
+import com.manning.junitbook.airport.Flight;
+import com.manning.junitbook.airport.FlightClass;
+import com.manning.junitbook.airport.Passenger;
+import com.manning.junitbook.airport.PolicyFlight;
+import com.manning.junitbook.airport.PremiumFlight;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adds and then removes passengers, one VIP out of four, on a mixed fleet of economy, business and premium flights.
+ * The boarding decisions are taken by a switch on the flight type string as in ch20 Before, by the flight
+ * subclasses, or by the decision table of a {@link PolicyFlight}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BoardingPolicyBenchmark {
+
+    private static final int FLIGHTS = 30;
+    private static final String[] TYPES = {"Economy", "Business", "Premium"};
+
+    @Param({"1000"})
+    private int decisionsCount;
+
+    private Passenger[] passengers;
+    private int[] flightIndexes;
+    private String[] flightTypes;
+    private Set<Passenger>[] typedPassengers;
+    private Flight[] subclassFleet;
+    private Flight[] policyFleet;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        passengers = new Passenger[decisionsCount];
+        flightIndexes = new int[decisionsCount];
+        for (int i = 0; i < decisionsCount; i++) {
+            passengers[i] = new Passenger("Passenger " + i, i % 4 == 0);
+            flightIndexes[i] = (int) ((i * 2654435761L) % FLIGHTS);
+        }
+        flightTypes = new String[FLIGHTS];
+        typedPassengers = new Set[FLIGHTS];
+        subclassFleet = new Flight[FLIGHTS];
+        policyFleet = new Flight[FLIGHTS];
+        for (int i = 0; i < FLIGHTS; i++) {
+            String id = String.valueOf(i);
+            flightTypes[i] = new String(TYPES[i % 3]);
+            typedPassengers[i] = new HashSet<>();
+            subclassFleet[i] = i % 3 == 0 ? new EconomyFlight(id) : i % 3 == 1 ? new BusinessFlight(id) : new PremiumFlight(id);
+            policyFleet[i] = new PolicyFlight(id, FlightClass.values()[i % 3]);
+        }
+    }
+
+    @Benchmark
+    public int typeSwitch() {
+        int boarded = 0;
+        for (int i = 0; i < passengers.length; i++) {
+            int flight = flightIndexes[i];
+            Passenger passenger = passengers[i];
+            if (typeSwitchAdd(flightTypes[flight], passenger) && typedPassengers[flight].add(passenger)) {
+                boarded++;
+            }
+            if (typeSwitchRemove(flightTypes[flight], passenger) && typedPassengers[flight].remove(passenger)) {
+                boarded--;
+            }
+        }
+        return boarded;
+    }
+
+    @Benchmark
+    public int subclasses() {
+        return addAndRemove(subclassFleet);
+    }
+
+    @Benchmark
+    public int decisionTable() {
+        return addAndRemove(policyFleet);
+    }
+
+    private int addAndRemove(Flight[] fleet) {
+        int boarded = 0;
+        for (int i = 0; i < passengers.length; i++) {
+            Flight flight = fleet[flightIndexes[i]];
+            Passenger passenger = passengers[i];
+            if (flight.addPassenger(passenger)) {
+                boarded++;
+            }
+            if (flight.removePassenger(passenger)) {
+                boarded--;
+            }
+        }
+        return boarded;
+    }
+
+    private static boolean typeSwitchAdd(String flightType, Passenger passenger) {
+        switch (flightType) {
+            case "Economy":
+                return true;
+            case "Business":
+            case "Premium":
+                return passenger.isVip();
+            default:
+                throw new RuntimeException("Unknown type: " + flightType);
+        }
+    }
+
+    private static boolean typeSwitchRemove(String flightType, Passenger passenger) {
+        switch (flightType) {
+            case "Economy":
+                return !passenger.isVip();
+            case "Business":
+                return false;
+            case "Premium":
+                return passenger.isVip();
+            default:
+                throw new RuntimeException("Unknown type: " + flightType);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.benchmarks;
+
+import com.manning.junitbook.airport.Passenger;
+import com.manning.junitbook.mileage.ColumnarMileage;
+import com.manning.junitbook.mileage.Mileage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recalculates the points of every passenger, one VIP out of four, from the {@link Mileage} maps
+ * and from the columns of a {@link ColumnarMileage}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class ColumnarMileageBenchmark {
+
+    @Param({"1000", "100000", "10000000"})
+    private int passengersCount;
+
+    private Passenger[] passengers;
+    private Mileage mileage;
+    private ColumnarMileage columnarMileage;
+
+    @Setup
+    public void setUp() {
+        passengers = new Passenger[passengersCount];
+        mileage = new Mileage();
+        columnarMileage = new ColumnarMileage();
+        for (int i = 0; i < passengersCount; i++) {
+            passengers[i] = new Passenger("Passenger " + i, i % 4 == 0);
+            mileage.addMileage(passengers[i], 100 + i % 5000);
+            columnarMileage.addMileage(passengers[i], 100 + i % 5000);
+        }
+    }
+
+    @Benchmark
+    public Mileage maps() {
+        // mark every passenger as changed, so that all the points are calculated again
+        for (Passenger passenger : passengers) {
+            mileage.addMileage(passenger, 0);
+        }
+        mileage.calculateGivenPoints();
+        return mileage;
+    }
+
+    @Benchmark
+    public ColumnarMileage columns() {
+        columnarMileage.calculateGivenPoints();
+        return columnarMileage;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.benchmarks;
+
+/**
+ * Generates distinct, valid US social security numbers for the benchmarked passengers.
+ */
+public final class Identifiers {
+
+    private static final int SERIALS = 9999;
+    private static final int GROUPS = 99;
+
+    private Identifiers() {
+    }
+
+    public static String usIdentifier(int index) {
+        int serial = 1 + index % SERIALS;
+        int group = 1 + index / SERIALS % GROUPS;
+        int area = 100 + index / (SERIALS * GROUPS);
+        return String.format("%03d-%02d-%04d", area, group, serial);
+    }
+}
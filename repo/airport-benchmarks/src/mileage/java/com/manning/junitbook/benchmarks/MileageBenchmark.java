@@ -0,0 +1,90 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.benchmarks;
+
+import com.manning.junitbook.airport.Passenger;
+import com.manning.junitbook.mileage.Mileage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calculates the points of a population of passengers, one VIP out of four.
+ * <p>
+ * {@code addAndCalculate} records the mileage of every passenger and calculates all the points, while
+ * {@code recalculateAfterUpdate} adds mileage to 1% of the passengers of an existing {@link Mileage} before
+ * calculating the points again.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class MileageBenchmark {
+
+    @Param({"1000", "100000", "10000000"})
+    private int passengersCount;
+
+    private Passenger[] passengers;
+    private Mileage mileage;
+    private int updateOffset;
+
+    @Setup
+    public void setUp() {
+        passengers = new Passenger[passengersCount];
+        for (int i = 0; i < passengersCount; i++) {
+            passengers[i] = new Passenger("Passenger " + i, i % 4 == 0);
+        }
+        mileage = new Mileage();
+        for (int i = 0; i < passengersCount; i++) {
+            mileage.addMileage(passengers[i], miles(i));
+        }
+        mileage.calculateGivenPoints();
+    }
+
+    @Benchmark
+    public Map<Passenger, Integer> addAndCalculate() {
+        Mileage mileage = new Mileage();
+        for (int i = 0; i < passengers.length; i++) {
+            mileage.addMileage(passengers[i], miles(i));
+        }
+        mileage.calculateGivenPoints();
+        return mileage.getPassengersPointsMap();
+    }
+
+    @Benchmark
+    public Map<Passenger, Integer> recalculateAfterUpdate() {
+        int updates = Math.max(1, passengers.length / 100);
+        for (int i = 0; i < updates; i++) {
+            int index = (updateOffset + i) % passengers.length;
+            mileage.addMileage(passengers[index], miles(index));
+        }
+        updateOffset = (updateOffset + updates) % passengers.length;
+        mileage.calculateGivenPoints();
+        return mileage.getPassengersPointsMap();
+    }
+
+    private static int miles(int index) {
+        return 100 + index % 5000;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.benchmarks;
+
+import com.manning.junitbook.airport.Flight;
+import com.manning.junitbook.airport.Passenger;
+import com.manning.junitbook.airport.PremiumFlight;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Boards and then removes a group of passengers, one VIP out of four, on a premium flight.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PremiumFlightBenchmark {
+
+    @Param({"100", "1000"})
+    private int passengersCount;
+
+    private Passenger[] passengers;
+
+    @Setup
+    public void setUp() {
+        passengers = new Passenger[passengersCount];
+        for (int i = 0; i < passengersCount; i++) {
+            passengers[i] = new Passenger("Passenger " + i, i % 4 == 0);
+        }
+    }
+
+    @Benchmark
+    public Flight addAndRemovePassengers() {
+        Flight flight = new PremiumFlight("1");
+        for (Passenger passenger : passengers) {
+            flight.addPassenger(passenger);
+        }
+        for (Passenger passenger : passengers) {
+            flight.removePassenger(passenger);
+        }
+        return flight;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.benchmarks;
+
+import com.manning.junitbook.testpyramid.airport.Flight;
+import com.manning.junitbook.testpyramid.airport.Passenger;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Boards and then removes a group of passengers on a flight with exactly enough seats.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FlightBenchmark {
+
+    @Param({"100", "1000"})
+    private int passengersCount;
+
+    private Passenger[] passengers;
+
+    @Setup
+    public void setUp() {
+        passengers = new Passenger[passengersCount];
+        for (int i = 0; i < passengersCount; i++) {
+            passengers[i] = new Passenger(Identifiers.usIdentifier(i), "Passenger " + i, "US");
+        }
+    }
+
+    @Benchmark
+    public Flight addAndRemovePassengers() {
+        Flight flight = new Flight("AA1234", passengersCount);
+        for (Passenger passenger : passengers) {
+            flight.addPassenger(passenger);
+        }
+        for (Passenger passenger : passengers) {
+            flight.removePassenger(passenger);
+        }
+        return flight;
+    }
+}
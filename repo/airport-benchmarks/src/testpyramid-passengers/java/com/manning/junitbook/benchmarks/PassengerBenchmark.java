@@ -0,0 +1,63 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.benchmarks;
+
+import com.manning.junitbook.testpyramid.airport.Passenger;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Constructs passengers, which validates their identifier and country code.
+ * Half of the passengers are US citizens, the other half are British.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PassengerBenchmark {
+
+    private static final int ROWS = 1024;
+
+    private final String[] identifiers = new String[ROWS];
+    private final String[] countryCodes = new String[ROWS];
+    private int row;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < ROWS; i++) {
+            String identifier = Identifiers.usIdentifier(i);
+            boolean us = i % 2 == 0;
+            // identifiers of the other countries are the ones starting with 9
+            identifiers[i] = us ? identifier : "9" + identifier.substring(1);
+            countryCodes[i] = us ? "US" : "GB";
+        }
+    }
+
+    @Benchmark
+    public Passenger createPassenger() {
+        int current = row;
+        row = (current + 1) & (ROWS - 1);
+        return new Passenger(identifiers[current], "Passenger", countryCodes[current]);
+    }
+}
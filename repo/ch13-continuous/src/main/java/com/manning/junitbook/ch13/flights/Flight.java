@@ -22,30 +22,36 @@ package com.manning.junitbook.ch13.flights;
 
 import com.manning.junitbook.ch13.passengers.Passenger;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-public class Flight {
+public class Flight implements Comparable<Flight> {
 
-    private String flightNumber;
+    private final FlightNumber flightNumber;
     private int seats;
     private Set<Passenger> passengers = new HashSet<>();
-
-    private static String flightNumberRegex = "^[A-Z]{2}\\d{3,4}$";
-    private static Pattern pattern = Pattern.compile(flightNumberRegex);
+    // passengers waiting for a seat, in arrival order
+    private final LinkedHashSet<Passenger> waitlist = new LinkedHashSet<>();
 
     public Flight(String flightNumber, int seats) {
-        Matcher matcher = pattern.matcher(flightNumber);
-        if (!matcher.matches()) {
-            throw new RuntimeException("Invalid flight number");
-        }
-        this.flightNumber = flightNumber;
+        this.flightNumber = FlightNumber.valueOf(flightNumber);
         this.seats = seats;
     }
 
     public String getFlightNumber() {
+        return flightNumber.toString();
+    }
+
+    public FlightNumber getFlightNumberValue() {
         return flightNumber;
     }
 
@@ -53,16 +59,145 @@ public class Flight {
         return passengers.size();
     }
 
+    public int getSeats() {
+        return seats;
+    }
+
+    public int getRemainingSeats() {
+        return Math.max(0, seats - passengers.size());
+    }
+
     public boolean addPassenger(Passenger passenger) {
         if (getNumberOfPassengers() >= seats) {
             throw new RuntimeException("Not enough seats for flight " + getFlightNumber());
         }
         passenger.setFlight(this);
+        waitlist.remove(passenger);
         return passengers.add(passenger);
     }
 
+    /**
+     * Boards the passenger if there is a free seat, and otherwise puts the passenger at the end of the waitlist.
+     * Like a promotion from the waitlist, boarding gives up the seat the passenger holds on another flight.
+     * Never throws for a full flight.
+     */
+    public BoardingStatus tryAddPassenger(Passenger passenger) {
+        if (passengers.contains(passenger)) {
+            return BoardingStatus.DUPLICATE;
+        }
+        if (passengers.size() < seats) {
+            board(passenger);
+            return BoardingStatus.ADDED;
+        }
+        waitlist.add(passenger);
+        return BoardingStatus.WAITLISTED;
+    }
+
+    /**
+     * Returns a read-only view of the passengers waiting for a seat, first come first.
+     */
+    public Collection<Passenger> getWaitlist() {
+        return Collections.unmodifiableCollection(waitlist);
+    }
+
+    public boolean removeFromWaitlist(Passenger passenger) {
+        return waitlist.remove(passenger);
+    }
+
     public boolean removePassenger(Passenger passenger) {
         passenger.setFlight(null);
-        return passengers.remove(passenger);
+        if (!passengers.remove(passenger)) {
+            return false;
+        }
+        Iterator<Passenger> waiting = waitlist.iterator();
+        if (waiting.hasNext()) {
+            Passenger next = waiting.next();
+            waiting.remove();
+            board(next);
+        }
+        return true;
+    }
+
+    private void board(Passenger passenger) {
+        // the passenger may hold a seat on another flight, which is given up so that its waitlist moves on
+        Flight previousFlight = passenger.getFlight();
+        if (previousFlight != null && previousFlight != this) {
+            previousFlight.removePassenger(passenger);
+        }
+        waitlist.remove(passenger);
+        passenger.setFlight(this);
+        passengers.add(passenger);
+    }
+
+    /**
+     * Moves all the passengers of this flight, e.g. a cancelled one, to the target flights.
+     *
+     * @see #rebookPassengers(Collection, Collection)
+     */
+    public boolean rebookPassengersTo(Collection<Flight> targets) {
+        return rebookPassengers(new ArrayList<>(passengers), targets);
+    }
+
+    /**
+     * Moves the passengers to the target flights, each passenger to the target with the most remaining seats
+     * at that point, in O(n log m) for n passengers and m targets. Passengers already on one of the targets stay there.
+     * Either all the passengers are moved or, when the targets do not have enough remaining seats, none of them.
+     * The targets are told apart by identity, so distinct flights sharing a number all take passengers.
+     * The seats given up are offered to the waitlists of the previous flights.
+     *
+     * @return whether the passengers were moved
+     */
+    public static boolean rebookPassengers(Collection<Passenger> passengers, Collection<Flight> targets) {
+        Set<Flight> targetFlights = Collections.newSetFromMap(new IdentityHashMap<>());
+        targetFlights.addAll(targets);
+        List<Passenger> moving = new ArrayList<>();
+        for (Passenger passenger : new LinkedHashSet<>(passengers)) {
+            if (!targetFlights.contains(passenger.getFlight())) {
+                moving.add(passenger);
+            }
+        }
+        long remainingSeats = 0;
+        for (Flight target : targetFlights) {
+            remainingSeats += target.getRemainingSeats();
+        }
+        if (remainingSeats < moving.size()) {
+            return false;
+        }
+
+        PriorityQueue<Flight> byRemainingSeats = new PriorityQueue<>(Math.max(1, targetFlights.size()),
+                Comparator.comparingInt(Flight::getRemainingSeats).reversed());
+        for (Flight target : targetFlights) {
+            if (target.getRemainingSeats() > 0) {
+                byRemainingSeats.add(target);
+            }
+        }
+        // enough seats were checked above, so the queue cannot run out and nothing below can fail: the promotions
+        // triggered by the seats given up only ever free seats on the targets, never take the ones counted
+        for (Passenger passenger : moving) {
+            Flight target = byRemainingSeats.poll();
+            target.board(passenger);
+            if (target.getRemainingSeats() > 0) {
+                byRemainingSeats.add(target);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int compareTo(Flight other) {
+        return flightNumber.compareTo(other.flightNumber);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Flight flight = (Flight) o;
+        return flightNumber.getKey() == flight.flightNumber.getKey();
+    }
+
+    @Override
+    public int hashCode() {
+        return flightNumber.getKey();
     }
 }
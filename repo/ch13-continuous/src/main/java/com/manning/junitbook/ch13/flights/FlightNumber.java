@@ -0,0 +1,135 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.ch13.flights;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Flight number made of two carrier letters followed by 3 or 4 digits, packed into a single {@code int}.
+ * <p>
+ * Instances are interned: parsing the same flight number twice returns the same instance, so
+ * flights can be compared and hashed on the packed key.
+ */
+public final class FlightNumber implements Comparable<FlightNumber> {
+
+    private static final int LETTERS = 26;
+    // numbers 000-999 take indexes 0-999, numbers 0000-9999 take indexes 1000-10999
+    private static final int NUMBERS_PER_CARRIER = 11_000;
+    private static final int CARRIER_SHIFT = 14;
+
+    private static final AtomicReferenceArray<AtomicReferenceArray<FlightNumber>> CACHE =
+            new AtomicReferenceArray<>(LETTERS * LETTERS);
+
+    private final int key;
+    private final String text;
+
+    private FlightNumber(int key, String text) {
+        this.key = key;
+        this.text = text;
+    }
+
+    public static FlightNumber valueOf(String text) {
+        int key = parse(text);
+        if (key < 0) {
+            throw new RuntimeException("Invalid flight number");
+        }
+        return intern(key, text);
+    }
+
+    public static boolean isValid(String text) {
+        return parse(text) >= 0;
+    }
+
+    /**
+     * Returns the packed key: the carrier letters in the high bits, the number index in the low 14 bits.
+     */
+    public int getKey() {
+        return key;
+    }
+
+    public String getCarrier() {
+        return text.substring(0, 2);
+    }
+
+    public int getNumber() {
+        int index = key & ((1 << CARRIER_SHIFT) - 1);
+        return index < 1000 ? index : index - 1000;
+    }
+
+    @Override
+    public int compareTo(FlightNumber other) {
+        return Integer.compare(key, other.key);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return key == ((FlightNumber) o).key;
+    }
+
+    @Override
+    public int hashCode() {
+        return key;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    private static int parse(String text) {
+        if (text == null || (text.length() != 5 && text.length() != 6)) {
+            return -1;
+        }
+        int first = text.charAt(0) - 'A';
+        int second = text.charAt(1) - 'A';
+        if (first < 0 || first >= LETTERS || second < 0 || second >= LETTERS) {
+            return -1;
+        }
+        int number = 0;
+        for (int i = 2; i < text.length(); i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            number = number * 10 + digit;
+        }
+        int index = text.length() == 5 ? number : 1000 + number;
+        return ((first * LETTERS + second) << CARRIER_SHIFT) | index;
+    }
+
+    private static FlightNumber intern(int key, String text) {
+        int carrier = key >>> CARRIER_SHIFT;
+        int index = key & ((1 << CARRIER_SHIFT) - 1);
+        AtomicReferenceArray<FlightNumber> numbers = CACHE.get(carrier);
+        if (numbers == null) {
+            CACHE.compareAndSet(carrier, null, new AtomicReferenceArray<>(NUMBERS_PER_CARRIER));
+            numbers = CACHE.get(carrier);
+        }
+        FlightNumber flightNumber = numbers.get(index);
+        if (flightNumber == null) {
+            numbers.compareAndSet(index, null, new FlightNumber(key, text));
+            flightNumber = numbers.get(index);
+        }
+        return flightNumber;
+    }
+}
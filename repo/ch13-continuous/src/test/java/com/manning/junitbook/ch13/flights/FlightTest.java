@@ -38,4 +38,12 @@ public class FlightTest {
                     Flight flight = new Flight("AA12", 100);
                 });
     }
+
+    @Test
+    public void testFlightNumbersAreInterned() {
+        Flight flight = new Flight("AA123", 100);
+        assertSame(flight.getFlightNumberValue(), new Flight("AA123", 50).getFlightNumberValue());
+        assertEquals(flight, new Flight("AA123", 50));
+        assertTrue(flight.compareTo(new Flight("AA124", 100)) < 0);
+    }
 }
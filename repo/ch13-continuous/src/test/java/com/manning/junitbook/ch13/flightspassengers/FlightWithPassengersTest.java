@@ -20,11 +20,15 @@
  */
 package com.manning.junitbook.ch13.flightspassengers;
 
+import com.manning.junitbook.ch13.flights.BoardingStatus;
 import com.manning.junitbook.ch13.flights.Flight;
 import com.manning.junitbook.ch13.passengers.Passenger;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -63,4 +67,116 @@ public class FlightWithPassengersTest {
 
     }
 
+    @Test
+    public void testRebookPassengersByRemainingSeats() {
+        Flight cancelled = new Flight("AA200", 300);
+        List<Passenger> passengers = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            Passenger passenger = new Passenger(String.format("123-45-%04d", i + 1), "Passenger " + i, "US");
+            cancelled.addPassenger(passenger);
+            passengers.add(passenger);
+        }
+        Flight first = new Flight("AA201", 200);
+        Flight second = new Flight("AA202", 150);
+        Flight third = new Flight("AA203", 150);
+        for (int i = 0; i < 50; i++) {
+            second.addPassenger(new Passenger(String.format("223-45-%04d", i + 1), "Passenger " + i, "US"));
+        }
+
+        assertTrue(cancelled.rebookPassengersTo(Arrays.asList(first, second, third)));
+
+        assertEquals(0, cancelled.getNumberOfPassengers());
+        // the 300 passengers level the three flights at 50 remaining seats each
+        assertEquals(50, first.getRemainingSeats());
+        assertEquals(50, second.getRemainingSeats());
+        assertEquals(50, third.getRemainingSeats());
+        for (Passenger passenger : passengers) {
+            assertNotEquals(cancelled, passenger.getFlight());
+        }
+    }
+
+    @Test
+    public void testRebookPassengersIsAllOrNothing() {
+        Flight cancelled = new Flight("AA200", 3);
+        Flight target = new Flight("AA201", 2);
+        List<Passenger> passengers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Passenger passenger = new Passenger(String.format("123-45-%04d", i + 1), "Passenger " + i, "US");
+            cancelled.addPassenger(passenger);
+            passengers.add(passenger);
+        }
+
+        assertFalse(Flight.rebookPassengers(passengers, Arrays.asList(target, target)));
+        assertEquals(3, cancelled.getNumberOfPassengers());
+        assertEquals(0, target.getNumberOfPassengers());
+        for (Passenger passenger : passengers) {
+            assertEquals(cancelled, passenger.getFlight());
+        }
+
+        // a passenger already on a target stays there and needs no seat
+        passengers.get(0).joinFlight(target);
+        assertTrue(Flight.rebookPassengers(passengers.subList(0, 2), Arrays.asList(target)));
+        assertEquals(1, cancelled.getNumberOfPassengers());
+        assertEquals(target, passengers.get(1).getFlight());
+        assertEquals(0, target.getRemainingSeats());
+        assertFalse(Flight.rebookPassengers(Arrays.asList(new Passenger("223-45-0001", "John Smith", "US")), Arrays.asList(target)));
+    }
+
+    @Test
+    public void testRebookPassengersPromotesWaitlists() {
+        Flight cancelled = new Flight("AA200", 2);
+        Passenger mike = new Passenger("123-45-6789", "Mike", "US");
+        Passenger john = new Passenger("123-45-6790", "John", "US");
+        Passenger james = new Passenger("123-45-6791", "James", "US");
+        cancelled.addPassenger(mike);
+        cancelled.addPassenger(john);
+        assertEquals(BoardingStatus.WAITLISTED, cancelled.tryAddPassenger(james));
+        // two distinct flights sharing a number each take one passenger
+        Flight morning = new Flight("AA201", 1);
+        Flight evening = new Flight("AA201", 1);
+
+        assertTrue(Flight.rebookPassengers(Arrays.asList(mike, john), Arrays.asList(morning, evening)));
+
+        assertEquals(1, morning.getNumberOfPassengers());
+        assertEquals(1, evening.getNumberOfPassengers());
+        assertNotSame(mike.getFlight(), john.getFlight());
+        assertEquals(cancelled, james.getFlight());
+        assertEquals(1, cancelled.getNumberOfPassengers());
+        assertTrue(cancelled.getWaitlist().isEmpty());
+    }
+
+    @Test
+    public void testTryAddPassengerGivesUpThePreviousSeat() {
+        Passenger mike = new Passenger("123-45-6789", "Mike", "US");
+        Flight other = new Flight("AA124", 1);
+        other.addPassenger(mike);
+
+        assertEquals(BoardingStatus.ADDED, flight.tryAddPassenger(mike));
+        assertEquals(flight, mike.getFlight());
+        assertEquals(0, other.getNumberOfPassengers());
+    }
+
+    @Test
+    public void testWaitlistPromotion() {
+        Passenger mike = new Passenger("123-45-6789", "Mike", "US");
+        Passenger john = new Passenger("123-45-6790", "John", "US");
+        Passenger james = new Passenger("123-45-6791", "James", "US");
+        Flight other = new Flight("AA124", 1);
+        other.addPassenger(james);
+
+        assertEquals(BoardingStatus.ADDED, flight.tryAddPassenger(mike));
+        assertEquals(BoardingStatus.DUPLICATE, flight.tryAddPassenger(mike));
+        assertEquals(BoardingStatus.WAITLISTED, flight.tryAddPassenger(james));
+        assertEquals(BoardingStatus.WAITLISTED, flight.tryAddPassenger(john));
+
+        assertTrue(flight.removePassenger(mike));
+        assertEquals(flight, james.getFlight());
+        assertEquals(0, other.getNumberOfPassengers());
+        assertEquals(1, flight.getNumberOfPassengers());
+        assertEquals(Arrays.asList(john), new ArrayList<>(flight.getWaitlist()));
+
+        assertTrue(flight.removeFromWaitlist(john));
+        assertTrue(flight.removePassenger(james));
+        assertEquals(0, flight.getNumberOfPassengers());
+    }
 }
@@ -0,0 +1,207 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.airport;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Load simulation of an airport: a fleet of economy, business and premium flights and a population of
+ * passengers, on which several threads add, remove and rebook passengers at random.
+ * <p>
+ * Run with {@code java ...AirportSimulation [flights=30] [passengers=10000] [vipRatio=0.25] [threads=4]
+ * [operations=1000000] [seed=42] [flightStyle=subclasses|policy]}. The same seed gives the same fleet, population
+ * and operations per thread. The flights are not thread-safe, so every operation locks the flights it changes.
+ */
+public class AirportSimulation {
+
+    public enum Operation {
+        ADD,
+        REMOVE,
+        REBOOK
+    }
+
+    private final Flight[] flights;
+    private final Passenger[] passengers;
+    private final int threads;
+    private final long operations;
+    private final long seed;
+
+    public AirportSimulation(int flightsCount, int passengersCount, double vipRatio, int threads, long operations,
+                             long seed, boolean policyFlights) {
+        Random random = new Random(seed);
+        this.flights = new Flight[flightsCount];
+        for (int i = 0; i < flightsCount; i++) {
+            FlightClass flightClass = FlightClass.values()[i % FlightClass.values().length];
+            flights[i] = policyFlights ? new PolicyFlight(String.valueOf(i), flightClass) : newFlight(String.valueOf(i), flightClass);
+        }
+        this.passengers = new Passenger[passengersCount];
+        for (int i = 0; i < passengersCount; i++) {
+            passengers[i] = new Passenger("Passenger " + i, random.nextDouble() < vipRatio);
+        }
+        this.threads = threads;
+        this.operations = operations;
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Expected name=value, got " + arg);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        int threads = Integer.parseInt(options.getOrDefault("threads", "4"));
+        long operations = Long.parseLong(options.getOrDefault("operations", "1000000"));
+        AirportSimulation simulation = new AirportSimulation(
+                Integer.parseInt(options.getOrDefault("flights", "30")),
+                Integer.parseInt(options.getOrDefault("passengers", "10000")),
+                Double.parseDouble(options.getOrDefault("vipRatio", "0.25")),
+                threads, operations,
+                Long.parseLong(options.getOrDefault("seed", "42")),
+                "policy".equals(options.getOrDefault("flightStyle", "subclasses")));
+
+        long start = System.nanoTime();
+        Map<Operation, LatencyHistogram> latencies = simulation.run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%,d operations from %d threads in %.2f s: %,.0f operations/s%n",
+                operations, threads, seconds, operations / seconds);
+        System.out.printf("%-8s %12s %10s %10s %10s %10s %10s%n", "", "count", "mean(us)", "p50(us)", "p99(us)", "p999(us)", "max(us)");
+        LatencyHistogram all = new LatencyHistogram();
+        for (Map.Entry<Operation, LatencyHistogram> entry : latencies.entrySet()) {
+            print(entry.getKey().name(), entry.getValue());
+            all.add(entry.getValue());
+        }
+        print("ALL", all);
+    }
+
+    /**
+     * Runs the operations, spread evenly over the threads.
+     *
+     * @return the latencies of the operations, in nanoseconds
+     */
+    public Map<Operation, LatencyHistogram> run() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Map<Operation, LatencyHistogram>>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                long threadOperations = operations / threads + (t < operations % threads ? 1 : 0);
+                SplittableRandom random = new SplittableRandom(seed * 31 + t);
+                futures.add(executor.submit(() -> simulate(threadOperations, random)));
+            }
+            Map<Operation, LatencyHistogram> latencies = histograms();
+            for (Future<Map<Operation, LatencyHistogram>> future : futures) {
+                for (Map.Entry<Operation, LatencyHistogram> entry : future.get().entrySet()) {
+                    latencies.get(entry.getKey()).add(entry.getValue());
+                }
+            }
+            return latencies;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public Flight[] getFlights() {
+        return flights.clone();
+    }
+
+    private Map<Operation, LatencyHistogram> simulate(long operations, SplittableRandom random) {
+        Map<Operation, LatencyHistogram> latencies = histograms();
+        Operation[] kinds = Operation.values();
+        for (long i = 0; i < operations; i++) {
+            Operation operation = kinds[random.nextInt(kinds.length)];
+            int from = random.nextInt(flights.length);
+            int to = random.nextInt(flights.length);
+            Passenger passenger = passengers[random.nextInt(passengers.length)];
+            long start = System.nanoTime();
+            switch (operation) {
+                case ADD:
+                    synchronized (flights[from]) {
+                        flights[from].addPassenger(passenger);
+                    }
+                    break;
+                case REMOVE:
+                    synchronized (flights[from]) {
+                        flights[from].removePassenger(passenger);
+                    }
+                    break;
+                default:
+                    rebook(passenger, from, to);
+            }
+            latencies.get(operation).record(System.nanoTime() - start);
+        }
+        return latencies;
+    }
+
+    private void rebook(Passenger passenger, int from, int to) {
+        if (from == to) {
+            return;
+        }
+        // lock in index order, so that two opposite rebookings cannot deadlock
+        Flight first = flights[Math.min(from, to)];
+        Flight second = flights[Math.max(from, to)];
+        synchronized (first) {
+            synchronized (second) {
+                if (flights[from].removePassenger(passenger) && !flights[to].addPassenger(passenger)) {
+                    // the passenger cannot board the other flight, so goes back to the first one
+                    flights[from].addPassenger(passenger);
+                }
+            }
+        }
+    }
+
+    private static Flight newFlight(String id, FlightClass flightClass) {
+        switch (flightClass) {
+            case ECONOMY:
+                return new EconomyFlight(id);
+            case BUSINESS:
+                return new BusinessFlight(id);
+            default:
+                return new PremiumFlight(id);
+        }
+    }
+
+    private static Map<Operation, LatencyHistogram> histograms() {
+        Map<Operation, LatencyHistogram> histograms = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            histograms.put(operation, new LatencyHistogram());
+        }
+        return histograms;
+    }
+
+    private static void print(String name, LatencyHistogram histogram) {
+        System.out.printf("%-8s %,12d %10.2f %10.2f %10.2f %10.2f %10.2f%n", name, histogram.getTotalCount(),
+                histogram.getMean() / 1000, histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0);
+    }
+}
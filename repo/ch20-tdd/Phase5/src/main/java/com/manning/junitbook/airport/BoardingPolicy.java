@@ -0,0 +1,91 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.airport;
+
+/**
+ * Boarding rules compiled into a decision table indexed by flight class, operation and VIP flag.
+ * <p>
+ * Everything that is not explicitly allowed is refused. A decision is a single array read:
+ * {@code decisions[(flightClass.ordinal() << 2) | (operation.ordinal() << 1) | vip]}.
+ */
+public final class BoardingPolicy {
+
+    /**
+     * The rules of {@link EconomyFlight}, {@link BusinessFlight} and {@link PremiumFlight}.
+     */
+    public static final BoardingPolicy STANDARD = builder()
+            .allow(FlightClass.ECONOMY, BoardingOperation.ADD)
+            .allow(FlightClass.ECONOMY, BoardingOperation.REMOVE, false)
+            .allow(FlightClass.BUSINESS, BoardingOperation.ADD, true)
+            .allow(FlightClass.PREMIUM, BoardingOperation.ADD, true)
+            .allow(FlightClass.PREMIUM, BoardingOperation.REMOVE, true)
+            .build();
+
+    private final boolean[] decisions;
+
+    private BoardingPolicy(boolean[] decisions) {
+        this.decisions = decisions;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public boolean isAllowed(FlightClass flightClass, BoardingOperation operation, boolean vip) {
+        return decisions[index(flightClass, operation, vip)];
+    }
+
+    boolean isAllowed(int classOffset, BoardingOperation operation, boolean vip) {
+        return decisions[classOffset | (operation.ordinal() << 1) | (vip ? 1 : 0)];
+    }
+
+    static int classOffset(FlightClass flightClass) {
+        return flightClass.ordinal() << 2;
+    }
+
+    private static int index(FlightClass flightClass, BoardingOperation operation, boolean vip) {
+        return classOffset(flightClass) | (operation.ordinal() << 1) | (vip ? 1 : 0);
+    }
+
+    public static final class Builder {
+
+        private final boolean[] decisions = new boolean[FlightClass.values().length << 2];
+
+        private Builder() {
+        }
+
+        /**
+         * Allows the operation on the flight class for VIP and regular passengers alike.
+         */
+        public Builder allow(FlightClass flightClass, BoardingOperation operation) {
+            return allow(flightClass, operation, false).allow(flightClass, operation, true);
+        }
+
+        public Builder allow(FlightClass flightClass, BoardingOperation operation, boolean vip) {
+            decisions[index(flightClass, operation, vip)] = true;
+            return this;
+        }
+
+        public BoardingPolicy build() {
+            return new BoardingPolicy(decisions.clone());
+        }
+    }
+}
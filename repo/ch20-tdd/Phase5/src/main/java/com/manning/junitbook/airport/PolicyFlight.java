@@ -0,0 +1,64 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.airport;
+
+/**
+ * Flight of any class whose boarding decisions are looked up in a {@link BoardingPolicy}
+ * instead of being spread over the flight subclasses.
+ */
+public final class PolicyFlight extends Flight {
+
+    private final FlightClass flightClass;
+    private final BoardingPolicy policy;
+    private final int classOffset;
+
+    public PolicyFlight(String id, FlightClass flightClass) {
+        this(id, flightClass, BoardingPolicy.STANDARD);
+    }
+
+    public PolicyFlight(String id, FlightClass flightClass, BoardingPolicy policy) {
+        super(id);
+        this.flightClass = flightClass;
+        this.policy = policy;
+        this.classOffset = BoardingPolicy.classOffset(flightClass);
+    }
+
+    public FlightClass getFlightClass() {
+        return flightClass;
+    }
+
+    @Override
+    public boolean addPassenger(Passenger passenger) {
+        if (policy.isAllowed(classOffset, BoardingOperation.ADD, passenger.isVip())) {
+            return passengers.add(passenger);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean removePassenger(Passenger passenger) {
+        if (policy.isAllowed(classOffset, BoardingOperation.REMOVE, passenger.isVip())) {
+            return passengers.remove(passenger);
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.airport;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AirportSimulationTest {
+
+    @Test
+    public void testSimulationKeepsBoardingRules() throws Exception {
+        for (boolean policyFlights : new boolean[]{false, true}) {
+            AirportSimulation simulation = new AirportSimulation(9, 500, 0.25, 4, 100_000, 42, policyFlights);
+
+            Map<AirportSimulation.Operation, LatencyHistogram> latencies = simulation.run();
+
+            long operations = latencies.values().stream().mapToLong(LatencyHistogram::getTotalCount).sum();
+            assertEquals(100_000, operations);
+            for (Flight flight : simulation.getFlights()) {
+                if (flight instanceof BusinessFlight || flight instanceof PremiumFlight
+                        || (flight instanceof PolicyFlight && ((PolicyFlight) flight).getFlightClass() != FlightClass.ECONOMY)) {
+                    assertTrue(flight.getPassengersSet().stream().allMatch(Passenger::isVip));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.airport;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BoardingPolicyTest {
+
+    private static Flight subclassFlight(FlightClass flightClass) {
+        switch (flightClass) {
+            case ECONOMY:
+                return new EconomyFlight("1");
+            case BUSINESS:
+                return new BusinessFlight("1");
+            default:
+                return new PremiumFlight("1");
+        }
+    }
+
+    @Test
+    public void testStandardPolicyMatchesFlightSubclasses() {
+        for (FlightClass flightClass : FlightClass.values()) {
+            for (boolean vip : new boolean[]{false, true}) {
+                Passenger passenger = new Passenger("Mike", vip);
+                Flight expected = subclassFlight(flightClass);
+                Flight actual = new PolicyFlight("1", flightClass);
+                String message = flightClass + (vip ? " VIP" : " regular");
+
+                assertEquals(expected.addPassenger(passenger), actual.addPassenger(passenger), message);
+                assertEquals(expected.getPassengersSet(), actual.getPassengersSet(), message);
+                assertEquals(expected.removePassenger(passenger), actual.removePassenger(passenger), message);
+                assertEquals(expected.getPassengersSet(), actual.getPassengersSet(), message);
+            }
+        }
+    }
+
+    @Test
+    public void testCustomPolicy() {
+        BoardingPolicy policy = BoardingPolicy.builder()
+                .allow(FlightClass.BUSINESS, BoardingOperation.ADD)
+                .build();
+        Flight flight = new PolicyFlight("1", FlightClass.BUSINESS, policy);
+        Passenger mike = new Passenger("Mike", false);
+
+        assertTrue(flight.addPassenger(mike));
+        assertFalse(flight.removePassenger(mike));
+        assertFalse(policy.isAllowed(FlightClass.ECONOMY, BoardingOperation.ADD, false));
+        assertTrue(policy.isAllowed(FlightClass.BUSINESS, BoardingOperation.ADD, true));
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.mileage;
+
+import com.manning.junitbook.airport.Passenger;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Mileage store laid out in columns: passenger {@code i} has its miles in {@code miles[i]}, its VIP flag in
+ * bit {@code i} of {@code vipFlags} and its points in {@code points[i]}.
+ * <p>
+ * The passengers are only looked up when recording mileage; the points calculation is a branch-free
+ * sequential pass over the columns.
+ */
+public class ColumnarMileage {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Map<Passenger, Integer> indexes = new HashMap<>();
+    private Passenger[] passengers = new Passenger[INITIAL_CAPACITY];
+    private int[] miles = new int[INITIAL_CAPACITY];
+    private long[] vipFlags = new long[INITIAL_CAPACITY >> 6];
+    private int[] points = new int[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Returns the column index of the passenger, adding the passenger if needed.
+     */
+    public int indexOf(Passenger passenger) {
+        Integer index = indexes.get(passenger);
+        if (index != null) {
+            return index;
+        }
+        if (size == miles.length) {
+            grow();
+        }
+        int added = size++;
+        passengers[added] = passenger;
+        if (passenger.isVip()) {
+            vipFlags[added >>> 6] |= 1L << added;
+        }
+        indexes.put(passenger, added);
+        return added;
+    }
+
+    public void addMileage(Passenger passenger, int miles) {
+        int index = indexOf(passenger);
+        this.miles[index] += miles;
+    }
+
+    /**
+     * Adds mileage to the passenger at the given column index, as returned by {@link #indexOf(Passenger)}.
+     */
+    public void addMileage(int index, int miles) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("No passenger at index " + index);
+        }
+        this.miles[index] += miles;
+    }
+
+    public void calculateGivenPoints() {
+        int[] miles = this.miles;
+        int[] points = this.points;
+        long[] vipFlags = this.vipFlags;
+        for (int i = 0; i < size; i++) {
+            // all ones for a VIP passenger, all zeros otherwise
+            int vip = -(int) ((vipFlags[i >>> 6] >>> i) & 1);
+            int mileage = miles[i];
+            points[i] = (mileage / Mileage.VIP_FACTOR & vip) | (mileage / Mileage.REGULAR_FACTOR & ~vip);
+        }
+    }
+
+    public int getPoints(Passenger passenger) {
+        Integer index = indexes.get(passenger);
+        return index == null ? 0 : points[index];
+    }
+
+    public Map<Passenger, Integer> getPassengersPointsMap() {
+        Map<Passenger, Integer> pointsMap = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            pointsMap.put(passengers[i], points[i]);
+        }
+        return Collections.unmodifiableMap(pointsMap);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void grow() {
+        int capacity = miles.length * 2;
+        passengers = Arrays.copyOf(passengers, capacity);
+        miles = Arrays.copyOf(miles, capacity);
+        vipFlags = Arrays.copyOf(vipFlags, capacity >> 6);
+        points = Arrays.copyOf(points, capacity);
+    }
+}
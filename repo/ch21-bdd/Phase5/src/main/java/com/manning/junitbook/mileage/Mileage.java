@@ -23,38 +23,61 @@ package com.manning.junitbook.mileage;
 import com.manning.junitbook.airport.Passenger;
 
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Mileage {
 
     public static final int VIP_FACTOR = 10;
     public static final int REGULAR_FACTOR = 20;
+    // under this number of changed passengers, a parallel calculation runs on the calling thread
+    private static final long PARALLELISM_THRESHOLD = 10_000;
 
-    private final Map<Passenger, Integer> passengersMileageMap = new HashMap<>();
-    private final Map<Passenger, Integer> passengersPointsMap = new HashMap<>();
+    private final Map<Passenger, Integer> passengersMileageMap = new ConcurrentHashMap<>();
+    private final Map<Passenger, Integer> passengersPointsMap = new ConcurrentHashMap<>();
+    // passengers whose mileage changed since the last points calculation
+    private final ConcurrentHashMap<Passenger, Boolean> changedPassengers = new ConcurrentHashMap<>();
 
     public Map<Passenger, Integer> getPassengersPointsMap() {
         return Collections.unmodifiableMap(passengersPointsMap);
     }
 
     public void addMileage(Passenger passenger, int miles) {
-        if (passengersMileageMap.containsKey(passenger)) {
-            passengersMileageMap.put(passenger, passengersMileageMap.get(passenger) + miles);
-        } else {
-            passengersMileageMap.put(passenger, miles);
+        passengersMileageMap.merge(passenger, miles, Integer::sum);
+        changedPassengers.put(passenger, Boolean.TRUE);
+    }
+
+    /**
+     * Updates the points of the passengers whose mileage changed since the previous calculation.
+     */
+    public void calculateGivenPoints() {
+        for (Passenger passenger : changedPassengers.keySet()) {
+            calculateGivenPoints(passenger);
         }
+    }
 
+    /**
+     * Same as {@link #calculateGivenPoints()}, with the changed passengers split over the common fork-join pool.
+     */
+    public void calculateGivenPointsInParallel() {
+        changedPassengers.forEachKey(PARALLELISM_THRESHOLD, this::calculateGivenPoints);
     }
 
-    public void calculateGivenPoints() {
-        for (Passenger passenger : passengersMileageMap.keySet()) {
-            if (passenger.isVip()) {
-                passengersPointsMap.put(passenger, passengersMileageMap.get(passenger) / VIP_FACTOR);
+    private void calculateGivenPoints(Passenger passenger) {
+        // unmark the passenger before reading the mileage, so that concurrently added miles are not lost
+        if (changedPassengers.remove(passenger) == null) {
+            return;
+        }
+        // the points are written under the lock of the mileage entry, so that a calculation
+        // reading older miles cannot overwrite the points of a later one
+        passengersMileageMap.computeIfPresent(passenger, (p, miles) -> {
+            if (p.isVip()) {
+                passengersPointsMap.put(p, miles / VIP_FACTOR);
             } else {
-                passengersPointsMap.put(passenger, passengersMileageMap.get(passenger) / REGULAR_FACTOR);
+                passengersPointsMap.put(p, miles / REGULAR_FACTOR);
             }
-        }
+            return miles;
+        });
     }
 
 }
@@ -0,0 +1,73 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.mileage;
+
+import com.manning.junitbook.airport.Passenger;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ColumnarMileageTest {
+
+    @Test
+    public void testPointsMatchMileage() {
+        Mileage mileage = new Mileage();
+        ColumnarMileage columnarMileage = new ColumnarMileage();
+        Random random = new Random(42);
+        List<Passenger> passengers = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            passengers.add(new Passenger("Passenger " + i, random.nextInt(4) == 0));
+        }
+        for (int i = 0; i < 50_000; i++) {
+            Passenger passenger = passengers.get(random.nextInt(passengers.size()));
+            int miles = random.nextInt(10_000);
+            mileage.addMileage(passenger, miles);
+            columnarMileage.addMileage(passenger, miles);
+        }
+        mileage.calculateGivenPoints();
+        columnarMileage.calculateGivenPoints();
+
+        assertEquals(mileage.getPassengersPointsMap(), columnarMileage.getPassengersPointsMap());
+    }
+
+    @Test
+    public void testAddMileageByIndex() {
+        ColumnarMileage mileage = new ColumnarMileage();
+        Passenger mike = new Passenger("Mike", false);
+        Passenger john = new Passenger("John", true);
+        int mikeIndex = mileage.indexOf(mike);
+        int johnIndex = mileage.indexOf(john);
+
+        mileage.addMileage(mikeIndex, 349);
+        mileage.addMileage(johnIndex, 349);
+        mileage.calculateGivenPoints();
+
+        assertEquals(mikeIndex, mileage.indexOf(mike));
+        assertEquals(17, mileage.getPoints(mike));
+        assertEquals(34, mileage.getPoints(john));
+        assertEquals(0, mileage.getPoints(new Passenger("James", false)));
+        assertThrows(IndexOutOfBoundsException.class, () -> mileage.addMileage(2, 100));
+    }
+}
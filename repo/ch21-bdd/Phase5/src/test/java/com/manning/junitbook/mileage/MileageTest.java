@@ -0,0 +1,94 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.mileage;
+
+import com.manning.junitbook.airport.Passenger;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MileageTest {
+
+    @Test
+    public void testParallelCalculationMatchesSequential() {
+        Mileage sequential = new Mileage();
+        Mileage parallel = new Mileage();
+        Random random = new Random(42);
+        List<Passenger> passengers = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            passengers.add(new Passenger("Passenger " + i, i % 4 == 0));
+        }
+        for (int round = 0; round < 3; round++) {
+            for (Passenger passenger : passengers) {
+                if (random.nextInt(3) > 0) {
+                    int miles = random.nextInt(10_000);
+                    sequential.addMileage(passenger, miles);
+                    parallel.addMileage(passenger, miles);
+                }
+            }
+            sequential.calculateGivenPoints();
+            parallel.calculateGivenPointsInParallel();
+
+            assertEquals(sequential.getPassengersPointsMap(), parallel.getPassengersPointsMap());
+        }
+    }
+
+    @Test
+    public void testConcurrentMileage() throws Exception {
+        Mileage mileage = new Mileage();
+        Passenger mike = new Passenger("Mike", false);
+        Passenger john = new Passenger("John", true);
+        int threads = 8;
+        int rounds = 10_000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int round = 0; round < rounds; round++) {
+                        mileage.addMileage(mike, 20);
+                        mileage.addMileage(john, 10);
+                        if (round % 1000 == 0) {
+                            mileage.calculateGivenPointsInParallel();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        mileage.calculateGivenPointsInParallel();
+        assertEquals(threads * rounds, mileage.getPassengersPointsMap().get(mike).intValue());
+        assertEquals(threads * rounds, mileage.getPassengersPointsMap().get(john).intValue());
+    }
+}
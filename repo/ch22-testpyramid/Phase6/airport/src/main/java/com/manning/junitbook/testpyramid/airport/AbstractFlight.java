@@ -0,0 +1,295 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport;
+
+import com.manning.junitbook.testpyramid.airport.distances.LandingDistancesPublisher;
+import com.manning.junitbook.testpyramid.airport.events.FlightEvent;
+import com.manning.junitbook.testpyramid.airport.events.FlightEventPipeline;
+import com.manning.junitbook.testpyramid.airport.events.FlightEventType;
+import com.manning.junitbook.testpyramid.airport.journal.FlightJournal;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+
+/**
+ * A flight with its route and its lifecycle; the subclasses decide how the passengers are booked.
+ */
+public abstract class AbstractFlight implements Comparable<AbstractFlight> {
+
+    static final Comparator<Passenger> BY_NAME = Comparator
+            .comparing(Passenger::getName, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+            .thenComparing(Passenger::getIdentifier);
+
+    private static final FlightState[] STATES = FlightState.values();
+
+    private final FlightNumber flightNumber;
+    private String origin;
+    private String destination;
+    private int distance;
+    // ordinal of the FlightState, read without locking; written only while holding the lifecycle lock
+    private volatile int state;
+    // held by the transitions and by the route changes they forbid, so that a check, its write, its journal record
+    // and its event are one step
+    private final Object lifecycle = new Object();
+    // null unless the events of this flight are published
+    private FlightEventPipeline eventPipeline;
+    private FlightJournal journal;
+    // null unless the distances of the passengers are published when the flight lands
+    private LandingDistancesPublisher landingPublisher;
+
+    protected AbstractFlight(FlightNumber flightNumber) {
+        this.flightNumber = flightNumber;
+        this.state = FlightState.SCHEDULED.ordinal();
+    }
+
+    public String getFlightNumber() {
+        return flightNumber.toString();
+    }
+
+    public FlightNumber getFlightNumberValue() {
+        return flightNumber;
+    }
+
+    public abstract int getSeats();
+
+    public abstract void setSeats(int seats);
+
+    /**
+     * Returns the number of passengers on board.
+     */
+    public abstract int getPassengersNumber();
+
+    public abstract boolean addPassenger(Passenger passenger);
+
+    /**
+     * Boards the passenger if there is a free seat, and otherwise puts the passenger at the end of the waitlist.
+     * Never throws for a full flight.
+     */
+    public abstract BoardingStatus tryAddPassenger(Passenger passenger);
+
+    /**
+     * Returns a read-only view of the passengers waiting for a seat, first come first.
+     */
+    public abstract Collection<Passenger> getWaitlist();
+
+    public abstract boolean removeFromWaitlist(Passenger passenger);
+
+    /**
+     * Boards a group of passengers, checking the capacity once instead of throwing when the flight is full.
+     *
+     * @return the status of every passenger, in the iteration order of the collection
+     */
+    public abstract BoardingStatus[] addPassengers(Collection<Passenger> newPassengers);
+
+    public abstract boolean removePassenger(Passenger passenger);
+
+    public abstract Set<Passenger> getPassengers();
+
+    /**
+     * Returns at most {@code limit} passengers, skipping the first {@code offset} ones.
+     */
+    public abstract List<Passenger> page(int offset, int limit);
+
+    /**
+     * Returns a live, read-only view of the passengers sorted by name, then by identifier.
+     * The passengers must not be renamed while on board.
+     */
+    public abstract NavigableSet<Passenger> getPassengersByName();
+
+    /**
+     * Returns a live, read-only view of the VIP passengers on board, in the iteration order of the passengers.
+     * The view filters the manifest whenever it is read, so a passenger made a VIP after boarding belongs to it.
+     */
+    public Set<Passenger> getVipPassengers() {
+        Set<Passenger> passengers = getPassengers();
+        return new AbstractSet<Passenger>() {
+            @Override
+            public Iterator<Passenger> iterator() {
+                return passengers.stream().filter(Passenger::isVip).iterator();
+            }
+
+            @Override
+            public int size() {
+                return (int) passengers.stream().filter(Passenger::isVip).count();
+            }
+        };
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public void setOrigin(String origin) {
+        synchronized (lifecycle) {
+            if (state != FlightState.SCHEDULED.ordinal()) {
+                throw new RuntimeException("Flight cannot change its origin any longer!");
+            }
+            this.origin = origin;
+            publish(FlightEventType.ORIGIN_CHANGED);
+        }
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public void setDestination(String destination) {
+        synchronized (lifecycle) {
+            if (state == FlightState.LANDED.ordinal()) {
+                throw new RuntimeException("Flight cannot change its destination any longer!");
+            }
+            this.destination = destination;
+            publish(FlightEventType.DESTINATION_CHANGED);
+        }
+    }
+
+    public int getDistance() {
+        return distance;
+    }
+
+    public void setDistance(int distance) {
+        this.distance = distance;
+    }
+
+    public FlightState getState() {
+        return STATES[state];
+    }
+
+    public boolean isFlying() {
+        return state == FlightState.TAKEN_OFF.ordinal();
+    }
+
+    public boolean isTakenOff() {
+        return state != FlightState.SCHEDULED.ordinal();
+    }
+
+    public boolean isLanded() {
+        return state == FlightState.LANDED.ordinal();
+    }
+
+    @Override
+    public int compareTo(AbstractFlight other) {
+        return flightNumber.compareTo(other.flightNumber);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        AbstractFlight flight = (AbstractFlight) o;
+        return flightNumber.getKey() == flight.flightNumber.getKey();
+    }
+
+    @Override
+    public int hashCode() {
+        return flightNumber.getKey();
+    }
+
+    @Override
+    public String toString() {
+        return "Flight " + getFlightNumber() + " from " + getOrigin() + " to " + getDestination();
+    }
+
+    /**
+     * Sets the pipeline receiving the lifecycle events of this flight, or null to publish none.
+     * A flight publishes no events until it is given a pipeline, so it no longer prints its take-off and landing;
+     * {@code setEventPipeline(FlightEventPipeline.getDefault())} prints them to the standard output again.
+     */
+    public void setEventPipeline(FlightEventPipeline eventPipeline) {
+        this.eventPipeline = eventPipeline;
+    }
+
+    /**
+     * Sets the journal appending the changes of this flight, or null to journal none.
+     * A new flight is journaled through {@link FlightJournal#register(AbstractFlight)}, which records its current
+     * state first.
+     */
+    public void setJournal(FlightJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Sets the publisher handed every landing of this flight on the landing thread, or null to publish none.
+     * Unlike the event pipeline, the publisher never drops a landing: {@link #land()} waits while a subscriber
+     * is behind.
+     */
+    public void setLandingPublisher(LandingDistancesPublisher landingPublisher) {
+        this.landingPublisher = landingPublisher;
+    }
+
+    FlightJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Takes the flight off, journaling and publishing the take-off in the same step.
+     *
+     * @throws RuntimeException if the flight has already taken off
+     */
+    public void takeOff() {
+        synchronized (lifecycle) {
+            transition(FlightState.SCHEDULED, FlightState.TAKEN_OFF);
+            if (journal != null) {
+                journal.tookOff(this);
+            }
+            publish(FlightEventType.TAKE_OFF);
+        }
+    }
+
+    /**
+     * Lands the flight, journaling and publishing the landing in the same step.
+     *
+     * @throws RuntimeException if the flight is not flying
+     */
+    public void land() {
+        synchronized (lifecycle) {
+            transition(FlightState.TAKEN_OFF, FlightState.LANDED);
+            if (journal != null) {
+                journal.landed(this);
+            }
+            publish(FlightEventType.LANDING);
+        }
+        // may wait for a slow subscriber, so it must not hold back the route changes
+        if (landingPublisher != null) {
+            landingPublisher.publish(this);
+        }
+    }
+
+    // called while holding the lifecycle lock
+    private void transition(FlightState from, FlightState to) {
+        if (state != from.ordinal()) {
+            throw new RuntimeException("Flight cannot go from " + getState() + " to " + to + "!");
+        }
+        state = to.ordinal();
+    }
+
+    // a full pipeline drops the event and counts it, see FlightEventPipeline#getDroppedEvents()
+    private void publish(FlightEventType type) {
+        if (eventPipeline != null) {
+            eventPipeline.publish(new FlightEvent(type, this));
+        }
+    }
+}
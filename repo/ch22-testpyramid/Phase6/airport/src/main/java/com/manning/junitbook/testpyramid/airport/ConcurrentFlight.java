@@ -0,0 +1,380 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport;
+
+import com.manning.junitbook.testpyramid.airport.journal.FlightJournal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Flight that can be booked from several threads at once without locking and without overselling.
+ * <p>
+ * The number of seats and the number of booked seats are packed into a single {@link AtomicLong}: a seat is
+ * reserved with a compare-and-set while holding the manifest entry of the passenger who joins, and released
+ * while holding the entry of the passenger who leaves. The booked count is therefore the number of passengers
+ * on board, never exceeds the seats, and a reduction of the seats is checked against it in the same atomic step.
+ * <p>
+ * Once requested, the name index is updated while holding the lock of the passenger entry in the manifest,
+ * so that it never keeps a passenger who left or misses one who boarded.
+ * <p>
+ * The waitlist is a lock-free queue of entries, with a concurrent map from each waiting passenger to its entry so
+ * that a passenger waits once; whoever removes a passenger from the map boards or drops that passenger. Leaving the
+ * waitlist only removes the passenger from the map: the entry left in the queue no longer matches and is skipped,
+ * and the queue is swept once such entries outnumber the waiting passengers. A passenger who joins the waitlist
+ * tries to promote it afterwards, and a passenger who leaves releases the seat before promoting: whichever comes
+ * second sees the other, so a freed seat is never left empty while somebody waits.
+ * <p>
+ * Once a journal is set, each change and its record are made while holding a lock of this flight, so the records
+ * of the flight follow the order of its changes while the other flights sharing the journal go on booking.
+ */
+public class ConcurrentFlight extends AbstractFlight {
+
+    private static final long BOOKED_MASK = 0xFFFF_FFFFL;
+    private static final int SWEEP_THRESHOLD = 64;
+
+    private final AtomicLong booking;
+    private final ConcurrentHashMap<Passenger, Passenger> manifest = new ConcurrentHashMap<>();
+    private final Set<Passenger> passengers = manifest.keySet();
+    private volatile NavigableSet<Passenger> passengersByName;
+    // entries of the passengers waiting for a seat in arrival order, possibly with some who stopped waiting
+    private final ConcurrentLinkedDeque<WaitlistEntry> waitlist = new ConcurrentLinkedDeque<>();
+    // the live entry of each waiting passenger
+    private final ConcurrentHashMap<Passenger, WaitlistEntry> waiting = new ConcurrentHashMap<>();
+    // approximate number of entries left in the waitlist by passengers who stopped waiting
+    private final AtomicInteger staleEntries = new AtomicInteger();
+    // held while a change of a journaled flight is made and appended, instead of the journal shared with other flights
+    private final Object journaling = new Object();
+
+    public ConcurrentFlight(String flightNumber, int seats) {
+        this(FlightNumber.valueOf(flightNumber), seats);
+    }
+
+    public ConcurrentFlight(FlightNumber flightNumber, int seats) {
+        super(flightNumber);
+        this.booking = new AtomicLong(pack(seats, 0));
+    }
+
+    @Override
+    public int getSeats() {
+        return seats(booking.get());
+    }
+
+    @Override
+    public void setSeats(int seats) {
+        FlightJournal journal = getJournal();
+        if (journal == null) {
+            updateSeats(seats);
+        } else {
+            synchronized (journaling) {
+                updateSeats(seats);
+                journal.seatsChanged(this);
+            }
+        }
+        promoteWaitlisted();
+    }
+
+    @Override
+    public int getPassengersNumber() {
+        return booked(booking.get());
+    }
+
+    @Override
+    public boolean addPassenger(Passenger passenger) {
+        if (!hasFreeSeat()) {
+            throw new RuntimeException("Not enough seats!");
+        }
+        BoardingStatus status = board(passenger);
+        if (status == BoardingStatus.NO_SEAT) {
+            throw new RuntimeException("Not enough seats!");
+        }
+        return status == BoardingStatus.ADDED;
+    }
+
+    @Override
+    public BoardingStatus tryAddPassenger(Passenger passenger) {
+        BoardingStatus status = board(passenger);
+        if (status != BoardingStatus.NO_SEAT) {
+            return status;
+        }
+        WaitlistEntry entry = new WaitlistEntry(passenger);
+        if (waiting.putIfAbsent(passenger, entry) == null) {
+            waitlist.add(entry);
+        }
+        promoteWaitlisted();
+        // promoted, or boarded by another thread meanwhile
+        return manifest.containsKey(passenger) ? BoardingStatus.ADDED : BoardingStatus.WAITLISTED;
+    }
+
+    /**
+     * Returns a snapshot of the passengers waiting for a seat, first come first.
+     */
+    @Override
+    public Collection<Passenger> getWaitlist() {
+        List<Passenger> snapshot = new ArrayList<>();
+        for (WaitlistEntry entry : waitlist) {
+            if (entry.isLive()) {
+                snapshot.add(entry.passenger);
+            }
+        }
+        return Collections.unmodifiableList(snapshot);
+    }
+
+    @Override
+    public boolean removeFromWaitlist(Passenger passenger) {
+        if (waiting.remove(passenger) == null) {
+            return false;
+        }
+        // the entry stays in the queue until it is polled or swept
+        if (staleEntries.incrementAndGet() > Math.max(SWEEP_THRESHOLD, waiting.size())) {
+            sweepWaitlist();
+        }
+        return true;
+    }
+
+    @Override
+    public BoardingStatus[] addPassengers(Collection<Passenger> newPassengers) {
+        BoardingStatus[] statuses = new BoardingStatus[newPassengers.size()];
+        int i = 0;
+        for (Passenger passenger : newPassengers) {
+            statuses[i++] = board(passenger);
+        }
+        return statuses;
+    }
+
+    @Override
+    public boolean removePassenger(Passenger passenger) {
+        if (passenger.isVip()) {
+            return false;
+        }
+        if (unboard(passenger)) {
+            promoteWaitlisted();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public Set<Passenger> getPassengers() {
+        return Collections.unmodifiableSet(passengers);
+    }
+
+    /**
+     * Returns at most {@code limit} passengers, skipping the first {@code offset} ones of a weakly consistent
+     * iteration over the manifest.
+     */
+    @Override
+    public List<Passenger> page(int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Offset and limit must not be negative");
+        }
+        List<Passenger> page = new ArrayList<>();
+        Iterator<Passenger> iterator = passengers.iterator();
+        for (int i = 0; i < offset && iterator.hasNext(); i++) {
+            iterator.next();
+        }
+        while (page.size() < limit && iterator.hasNext()) {
+            page.add(iterator.next());
+        }
+        return Collections.unmodifiableList(page);
+    }
+
+    @Override
+    public NavigableSet<Passenger> getPassengersByName() {
+        NavigableSet<Passenger> byName = passengersByName;
+        if (byName == null) {
+            synchronized (manifest) {
+                byName = passengersByName;
+                if (byName == null) {
+                    byName = new ConcurrentSkipListSet<>(BY_NAME);
+                    // published first: from now on, boardings and removals update the index themselves
+                    passengersByName = byName;
+                    NavigableSet<Passenger> index = byName;
+                    for (Passenger passenger : passengers) {
+                        manifest.computeIfPresent(passenger, (p, boarded) -> {
+                            index.add(boarded);
+                            return boarded;
+                        });
+                    }
+                }
+            }
+        }
+        return Collections.unmodifiableNavigableSet(byName);
+    }
+
+    private void promoteWaitlisted() {
+        while (hasFreeSeat()) {
+            WaitlistEntry entry = waitlist.poll();
+            if (entry == null) {
+                return;
+            }
+            // the entry of a passenger who left the waitlist, or is promoted by another thread, is skipped
+            if (!waiting.remove(entry.passenger, entry)) {
+                staleEntries.decrementAndGet();
+            } else if (board(entry.passenger) == BoardingStatus.NO_SEAT) {
+                // the seat was taken meanwhile: the passenger waits first again, and the loop checks for another seat
+                if (waiting.putIfAbsent(entry.passenger, entry) == null) {
+                    waitlist.offerFirst(entry);
+                }
+            }
+        }
+    }
+
+    private void sweepWaitlist() {
+        int swept = 0;
+        for (Iterator<WaitlistEntry> entries = waitlist.iterator(); entries.hasNext(); ) {
+            // a stale entry never becomes live again while it is queued
+            if (!entries.next().isLive()) {
+                entries.remove();
+                swept++;
+            }
+        }
+        staleEntries.addAndGet(-swept);
+    }
+
+    private void updateSeats(int seats) {
+        long current;
+        do {
+            current = booking.get();
+            if (booked(current) > seats) {
+                throw new RuntimeException("Cannot reduce the number of seats under the number of existing passengers!");
+            }
+        } while (!booking.compareAndSet(current, pack(seats, booked(current))));
+    }
+
+    private BoardingStatus board(Passenger passenger) {
+        FlightJournal journal = getJournal();
+        BoardingStatus status;
+        if (journal == null) {
+            status = join(passenger);
+        } else {
+            synchronized (journaling) {
+                status = join(passenger);
+                if (status == BoardingStatus.ADDED) {
+                    journal.passengerAdded(this, passenger);
+                }
+            }
+        }
+        if (status == BoardingStatus.ADDED && !waiting.isEmpty()) {
+            removeFromWaitlist(passenger);
+        }
+        return status;
+    }
+
+    private boolean unboard(Passenger passenger) {
+        FlightJournal journal = getJournal();
+        if (journal == null) {
+            return leave(passenger);
+        }
+        synchronized (journaling) {
+            if (!leave(passenger)) {
+                return false;
+            }
+            journal.passengerRemoved(this, passenger);
+            return true;
+        }
+    }
+
+    private BoardingStatus join(Passenger passenger) {
+        BoardingStatus[] status = {BoardingStatus.DUPLICATE};
+        manifest.computeIfAbsent(passenger, p -> {
+            if (!reserveSeat()) {
+                status[0] = BoardingStatus.NO_SEAT;
+                return null;
+            }
+            NavigableSet<Passenger> byName = passengersByName;
+            if (byName != null) {
+                byName.add(p);
+            }
+            status[0] = BoardingStatus.ADDED;
+            return p;
+        });
+        return status[0];
+    }
+
+    private boolean leave(Passenger passenger) {
+        boolean[] unboarded = new boolean[1];
+        manifest.computeIfPresent(passenger, (p, boarded) -> {
+            NavigableSet<Passenger> byName = passengersByName;
+            if (byName != null) {
+                byName.remove(boarded);
+            }
+            releaseSeat();
+            unboarded[0] = true;
+            return null;
+        });
+        return unboarded[0];
+    }
+
+    private boolean hasFreeSeat() {
+        long current = booking.get();
+        return booked(current) < seats(current);
+    }
+
+    private boolean reserveSeat() {
+        long current;
+        do {
+            current = booking.get();
+            if (booked(current) >= seats(current)) {
+                return false;
+            }
+        } while (!booking.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    private void releaseSeat() {
+        booking.decrementAndGet();
+    }
+
+    private static long pack(int seats, int booked) {
+        return ((long) seats << 32) | (booked & BOOKED_MASK);
+    }
+
+    private static int seats(long booking) {
+        return (int) (booking >>> 32);
+    }
+
+    private static int booked(long booking) {
+        return (int) (booking & BOOKED_MASK);
+    }
+
+    private final class WaitlistEntry {
+        private final Passenger passenger;
+
+        WaitlistEntry(Passenger passenger) {
+            this.passenger = passenger;
+        }
+
+        boolean isLive() {
+            return waiting.get(passenger) == this;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Thread-safe ledger accumulating every passenger into its own {@link LongAdder}, so that
+ * concurrent additions for the same passenger spread over striped cells instead of contending.
+ * <p>
+ * Every write counts itself in a per-thread stripe while it runs. A snapshot raises a flag that holds back the new
+ * writes and waits for the stripes to drain, so it copies the amounts at a single instant; the writes only pay an
+ * uncontended increment and decrement of their own stripe.
+ */
+public class ConcurrentPassengerLedger implements PassengerLedger {
+
+    private static final int STRIPES = 64;
+    // longs between two stripes, so that each sits on its own cache line
+    private static final int PADDING = 16;
+
+    private final ConcurrentMap<Passenger, Amount> amounts = new ConcurrentHashMap<>();
+    // every passenger is queued once until its mark is cleared
+    private final Queue<Passenger> changed = new ConcurrentLinkedQueue<>();
+    // writes running, per stripe of threads; a thread always counts itself on the same stripe, so that no stripe
+    // ever falls below zero and the snapshot can read them one after the other
+    private final AtomicLongArray writers = new AtomicLongArray(STRIPES * PADDING);
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private volatile boolean snapshotting;
+
+    @Override
+    public void add(Passenger passenger, int amount) {
+        addTo(passenger, amount);
+    }
+
+    /**
+     * Sums the cells of the passenger after the addition, which may include the concurrent additions.
+     */
+    @Override
+    public int addAndGet(Passenger passenger, int amount) {
+        return addTo(passenger, amount).intValue();
+    }
+
+    private Amount addTo(Passenger passenger, int amount) {
+        int stripe = enter();
+        try {
+            Amount adder = amounts.get(passenger);
+            if (adder == null) {
+                adder = amounts.computeIfAbsent(passenger, key -> new Amount());
+            }
+            adder.add(amount);
+            // marked after the addition, so that a concurrent forEachChanged either sees the addition or leaves the mark
+            if (adder.changed == 0 && Amount.CHANGED.compareAndSet(adder, 0, 1)) {
+                changed.add(passenger);
+            }
+            return adder;
+        } finally {
+            writers.decrementAndGet(stripe);
+        }
+    }
+
+    /**
+     * Runs the action under the lock of the passenger entry.
+     */
+    @Override
+    public void forEachChanged(ObjIntConsumer<Passenger> action) {
+        Passenger passenger;
+        while ((passenger = changed.poll()) != null) {
+            amounts.computeIfPresent(passenger, (key, adder) -> {
+                // unmarked before the amount is read, so that concurrently added amounts mark the passenger again
+                adder.changed = 0;
+                action.accept(key, adder.intValue());
+                return adder;
+            });
+        }
+    }
+
+    @Override
+    public void put(Passenger passenger, int amount) {
+        int stripe = enter();
+        try {
+            // the adder of a known passenger is reused, as the points of every passenger are put again and again
+            amounts.compute(passenger, (key, adder) -> {
+                if (adder == null) {
+                    adder = new Amount();
+                } else {
+                    adder.reset();
+                }
+                adder.add(amount);
+                return adder;
+            });
+        } finally {
+            writers.decrementAndGet(stripe);
+        }
+    }
+
+    @Override
+    public int get(Passenger passenger) {
+        LongAdder adder = amounts.get(passenger);
+        return adder == null ? 0 : adder.intValue();
+    }
+
+    @Override
+    public boolean contains(Passenger passenger) {
+        return amounts.containsKey(passenger);
+    }
+
+    @Override
+    public int size() {
+        return amounts.size();
+    }
+
+    /**
+     * Returns an immutable snapshot of the amounts at a single instant: it holds back the writes starting meanwhile
+     * and waits for the running ones, so it includes every write completed before it and none completed after it.
+     */
+    @Override
+    public Map<Passenger, Integer> asMap() {
+        snapshotLock.lock();
+        try {
+            snapshotting = true;
+            // a write counted after its stripe was read sees the flag and backs off
+            for (int stripe = 0; stripe < STRIPES * PADDING; stripe += PADDING) {
+                while (writers.get(stripe) != 0) {
+                    Thread.yield();
+                }
+            }
+            Map<Passenger, Integer> snapshot = new HashMap<>(amounts.size() * 4 / 3 + 1);
+            amounts.forEach((passenger, adder) -> snapshot.put(passenger, adder.intValue()));
+            return Collections.unmodifiableMap(snapshot);
+        } finally {
+            snapshotting = false;
+            snapshotLock.unlock();
+        }
+    }
+
+    // counts a write on the stripe of the current thread, once no snapshot is being taken
+    private int enter() {
+        int h = (int) Thread.currentThread().getId() * 0x9E3779B9;
+        int stripe = ((h ^ (h >>> 16)) & (STRIPES - 1)) * PADDING;
+        while (true) {
+            writers.incrementAndGet(stripe);
+            if (!snapshotting) {
+                return stripe;
+            }
+            writers.decrementAndGet(stripe);
+            // the snapshot holds the lock while the flag is raised
+            snapshotLock.lock();
+            snapshotLock.unlock();
+        }
+    }
+
+    private static final class Amount extends LongAdder {
+        private static final long serialVersionUID = 1L;
+
+        static final AtomicIntegerFieldUpdater<Amount> CHANGED = AtomicIntegerFieldUpdater.newUpdater(Amount.class, "changed");
+
+        volatile int changed;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-min sketch of the amounts added per passenger key, with conservative updates: an addition only raises the
+ * counters that are below the new estimate. An estimate is never below the real total and exceeds it by at most
+ * {@code epsilon} times the sum of all the amounts, with a probability of {@code 1 - delta}.
+ * <p>
+ * The counters are only ever raised to an atomic maximum, so different keys can be added from several threads at
+ * once; the additions to the same key must not run concurrently, or one could read the counters before the other
+ * raised them and the estimate would miss an amount.
+ */
+class CountMinSketch {
+
+    private final AtomicLongArray counters;
+    private final int[] seeds;
+    private final int mask;
+
+    CountMinSketch(double epsilon, double delta) {
+        if (epsilon <= 0 || epsilon >= 1 || delta <= 0 || delta >= 1) {
+            throw new IllegalArgumentException("Epsilon and delta must be between 0 and 1");
+        }
+        int width = Integer.highestOneBit((int) Math.ceil(Math.E / epsilon) - 1) << 1;
+        int depth = (int) Math.ceil(Math.log(1 / delta));
+        this.counters = new AtomicLongArray(width * depth);
+        this.mask = width - 1;
+        this.seeds = new int[depth];
+        for (int row = 0; row < depth; row++) {
+            seeds[row] = mix(0x9E3779B9 * (row + 1));
+        }
+    }
+
+    /**
+     * Adds the amount to the key and returns the new estimate of its total.
+     */
+    long add(int key, int amount) {
+        long estimate = estimate(key) + amount;
+        for (int row = 0; row < seeds.length; row++) {
+            int slot = slot(row, key);
+            long counter = counters.get(slot);
+            while (counter < estimate && !counters.compareAndSet(slot, counter, estimate)) {
+                counter = counters.get(slot);
+            }
+        }
+        return estimate;
+    }
+
+    long estimate(int key) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < seeds.length; row++) {
+            estimate = Math.min(estimate, counters.get(slot(row, key)));
+        }
+        return estimate;
+    }
+
+    int getWidth() {
+        return mask + 1;
+    }
+
+    int getDepth() {
+        return seeds.length;
+    }
+
+    private int slot(int row, int key) {
+        return row * (mask + 1) + (mix(key ^ seeds[row]) & mask);
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
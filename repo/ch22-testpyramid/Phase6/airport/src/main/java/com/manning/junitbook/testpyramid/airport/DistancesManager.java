@@ -20,36 +20,123 @@
  */
 package com.manning.junitbook.testpyramid.airport;
 
-import java.util.Collections;
-import java.util.HashMap;
+import java.time.Clock;
+import java.time.YearMonth;
 import java.util.Map;
+import java.util.function.Supplier;
 
 public class DistancesManager {
     private static final int DISTANCE_FACTOR = 10;
 
-    private final Map<Passenger, Integer> passengersDistancesMap = new HashMap<>();
-    private final Map<Passenger, Integer> passengersPointsMap = new HashMap<>();
+    private final PassengerLedger passengersDistances;
+    private final PassengerLedger passengersPoints;
+    // null unless the distances of the last months are kept
+    private final MonthlyDistances monthlyDistances;
+    private final Clock clock;
+    private volatile Leaderboard leaderboard;
+
+    public DistancesManager() {
+        this(HashMapPassengerLedger::new);
+    }
+
+    public DistancesManager(Supplier<PassengerLedger> ledgerFactory) {
+        this(ledgerFactory, null, null);
+    }
+
+    /**
+     * Creates a manager that also keeps the distances of the last {@code retainedMonths} months of every passenger.
+     * The distances added without a month count for the current month of the clock.
+     */
+    public DistancesManager(Supplier<PassengerLedger> ledgerFactory, int retainedMonths, Clock clock) {
+        this(ledgerFactory, new MonthlyDistances(retainedMonths), clock);
+    }
+
+    private DistancesManager(Supplier<PassengerLedger> ledgerFactory, MonthlyDistances monthlyDistances, Clock clock) {
+        this.passengersDistances = ledgerFactory.get();
+        this.passengersPoints = ledgerFactory.get();
+        this.monthlyDistances = monthlyDistances;
+        this.clock = clock;
+    }
+
+    /**
+     * Creates a manager whose distances can be added from many threads at the same time.
+     */
+    public static DistancesManager concurrent() {
+        return new DistancesManager(ConcurrentPassengerLedger::new);
+    }
 
     public Map<Passenger, Integer> getPassengersDistancesMap() {
-        return Collections.unmodifiableMap(passengersDistancesMap);
+        return passengersDistances.asMap();
     }
 
     public Map<Passenger, Integer> getPassengersPointsMap() {
-        return Collections.unmodifiableMap(passengersPointsMap);
+        return passengersPoints.asMap();
     }
 
     public void addDistance(Passenger passenger, int distance) {
-        if (passengersDistancesMap.containsKey(passenger)) {
-            passengersDistancesMap.put(passenger, passengersDistancesMap.get(passenger) + distance);
+        addDistance(passenger, distance, monthlyDistances == null ? null : YearMonth.now(clock));
+    }
+
+    /**
+     * Adds a distance travelled during the given month, which may be an earlier one.
+     */
+    public void addDistance(Passenger passenger, int distance, YearMonth month) {
+        Leaderboard leaderboard = this.leaderboard;
+        if (leaderboard == null) {
+            passengersDistances.add(passenger, distance);
+        } else if (leaderboard.isApproximate()) {
+            passengersDistances.add(passenger, distance);
+            leaderboard.record(passenger, distance, 0);
         } else {
-            passengersDistancesMap.put(passenger, distance);
+            // the total comes from the addition itself rather than from a second lookup
+            leaderboard.record(passenger, distance, passengersDistances.addAndGet(passenger, distance));
+        }
+        if (monthlyDistances != null) {
+            monthlyDistances.add(passenger, month, distance);
         }
     }
 
-    public void calculateGivenPoints() {
-        for (Passenger passenger : getPassengersDistancesMap().keySet()) {
-            passengersPointsMap.put(passenger, getPassengersDistancesMap().get(passenger) / DISTANCE_FACTOR);
+    /**
+     * Returns the distance travelled by the passenger during the last {@code months} months, the current one included.
+     */
+    public long getRollingDistance(Passenger passenger, int months) {
+        return getMonthlyDistances().getRollingDistance(passenger, YearMonth.now(clock), months);
+    }
+
+    /**
+     * Returns the distance travelled by the passenger from the first to the last month, both included.
+     */
+    public long getDistance(Passenger passenger, YearMonth from, YearMonth to) {
+        return getMonthlyDistances().getDistance(passenger, from, to);
+    }
+
+    /**
+     * Sets the leaderboard updated by every added distance, or null to keep none.
+     * A passenger is ranked once a distance is added afterwards: on the whole total in the exact mode, on an
+     * estimate of the distances added afterwards only in the approximate mode.
+     */
+    public void setLeaderboard(Leaderboard leaderboard) {
+        this.leaderboard = leaderboard;
+    }
+
+    public Leaderboard getLeaderboard() {
+        return leaderboard;
+    }
+
+    public MonthlyDistances getMonthlyDistances() {
+        if (monthlyDistances == null) {
+            throw new RuntimeException("This manager does not keep the monthly distances");
         }
+        return monthlyDistances;
+    }
+
+    /**
+     * Updates the points of the passengers whose distance changed since the previous calculation.
+     */
+    public void calculateGivenPoints() {
+        // the ledger tracks the changed passengers and holds off the other calculations of a passenger while its
+        // points are written, so that a calculation reading an older distance cannot overwrite a later one
+        passengersDistances.forEachChanged((passenger, distance) -> passengersPoints.put(passenger, distance / DISTANCE_FACTOR));
     }
 
 }
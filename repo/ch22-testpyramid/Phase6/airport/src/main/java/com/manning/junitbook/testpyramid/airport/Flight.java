@@ -20,131 +20,183 @@
  */
 package com.manning.junitbook.testpyramid.airport;
 
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NavigableSet;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.TreeSet;
 
-public class Flight {
+public class Flight extends AbstractFlight {
 
-    private final String flightNumber;
     private int seats;
-    private String origin;
-    private String destination;
-    private boolean flying;
-    private int distance;
-    private boolean takenOff;
-    private boolean landed;
-    private final Set<Passenger> passengersSet = new HashSet<>();
+    private final PassengerManifest passengers = new PassengerManifest();
+    // built on the first sorted request, then maintained on every boarding and removal
+    private NavigableSet<Passenger> passengersByName;
+    // passengers waiting for a seat, in arrival order
+    private final LinkedHashSet<Passenger> waitlist = new LinkedHashSet<>();
 
     public Flight(String flightNumber, int seats) {
-        Pattern pattern = Pattern.compile("^[A-Z]{2}\\d{3,4}$");
-        Matcher matcher = pattern.matcher(flightNumber);
-        if (!matcher.matches()) {
-            throw new RuntimeException("Invalid flight number");
-        }
-        this.flightNumber = flightNumber;
-        this.seats = seats;
-        this.flying = false;
-        this.takenOff = false;
-        this.landed = false;
+        this(FlightNumber.valueOf(flightNumber), seats);
     }
 
-    public String getFlightNumber() {
-        return flightNumber;
+    public Flight(FlightNumber flightNumber, int seats) {
+        super(flightNumber);
+        this.seats = seats;
     }
 
+    @Override
     public int getSeats() {
         return seats;
     }
 
+    @Override
     public void setSeats(int seats) {
-        if (passengersSet.size() > seats) {
+        if (passengers.size() > seats) {
             throw new RuntimeException("Cannot reduce the number of seats under the number of existing passengers!");
         }
         this.seats = seats;
+        if (getJournal() != null) {
+            getJournal().seatsChanged(this);
+        }
+        promoteWaitlisted();
     }
 
+    @Override
     public int getPassengersNumber() {
-        return passengersSet.size();
+        return passengers.size();
     }
 
+    @Override
     public boolean addPassenger(Passenger passenger) {
-        if (passengersSet.size() >= seats) {
+        if (passengers.size() >= seats) {
             throw new RuntimeException("Not enough seats!");
         }
-        return passengersSet.add(passenger);
+        return board(passenger);
     }
 
-    public boolean removePassenger(Passenger passenger) {
-        if (passenger.isVip()) {
-            return false;
+    @Override
+    public BoardingStatus tryAddPassenger(Passenger passenger) {
+        if (passengers.contains(passenger)) {
+            return BoardingStatus.DUPLICATE;
         }
-        return passengersSet.remove(passenger);
+        if (passengers.size() < seats) {
+            board(passenger);
+            return BoardingStatus.ADDED;
+        }
+        waitlist.add(passenger);
+        return BoardingStatus.WAITLISTED;
     }
 
-    public Set<Passenger> getPassengers() {
-        return Collections.unmodifiableSet(passengersSet);
+    @Override
+    public Collection<Passenger> getWaitlist() {
+        return Collections.unmodifiableCollection(waitlist);
     }
 
-    public String getOrigin() {
-        return origin;
+    @Override
+    public boolean removeFromWaitlist(Passenger passenger) {
+        return waitlist.remove(passenger);
     }
 
-    public void setOrigin(String origin) {
-        if (takenOff) {
-            throw new RuntimeException("Flight cannot change its origin any longer!");
+    @Override
+    public BoardingStatus[] addPassengers(Collection<Passenger> newPassengers) {
+        BoardingStatus[] statuses = new BoardingStatus[newPassengers.size()];
+        int freeSeats = Math.max(0, seats - passengers.size());
+        passengers.ensureCapacity(passengers.size() + Math.min(freeSeats, newPassengers.size()));
+        int i = 0;
+        for (Passenger passenger : newPassengers) {
+            if (freeSeats > 0) {
+                if (board(passenger)) {
+                    freeSeats--;
+                    statuses[i++] = BoardingStatus.ADDED;
+                } else {
+                    statuses[i++] = BoardingStatus.DUPLICATE;
+                }
+            } else {
+                statuses[i++] = passengers.contains(passenger) ? BoardingStatus.DUPLICATE : BoardingStatus.NO_SEAT;
+            }
         }
-        this.origin = origin;
+        return statuses;
     }
 
-    public String getDestination() {
-        return destination;
-    }
-
-    public void setDestination(String destination) {
-        if (landed) {
-            throw new RuntimeException("Flight cannot change its destination any longer!");
+    @Override
+    public boolean removePassenger(Passenger passenger) {
+        if (passenger.isVip()) {
+            return false;
         }
-        this.destination = destination;
-    }
-
-    public int getDistance() {
-        return distance;
-    }
-
-    public void setDistance(int distance) {
-        this.distance = distance;
-    }
-
-    public boolean isFlying() {
-        return flying;
+        if (!unboard(passenger)) {
+            return false;
+        }
+        promoteWaitlisted();
+        return true;
     }
 
-    public boolean isTakenOff() {
-        return takenOff;
+    @Override
+    public Set<Passenger> getPassengers() {
+        return Collections.unmodifiableSet(passengers);
     }
 
-    public boolean isLanded() {
-        return landed;
+    /**
+     * Returns at most {@code limit} passengers in seat order, skipping the first {@code offset} ones.
+     */
+    @Override
+    public List<Passenger> page(int offset, int limit) {
+        return Collections.unmodifiableList(passengers.page(offset, limit));
     }
 
     @Override
-    public String toString() {
-        return "Flight " + getFlightNumber() + " from " + getOrigin() + " to " + getDestination();
+    public NavigableSet<Passenger> getPassengersByName() {
+        if (passengersByName == null) {
+            passengersByName = new TreeSet<>(BY_NAME);
+            passengersByName.addAll(passengers);
+        }
+        return Collections.unmodifiableNavigableSet(passengersByName);
     }
 
-    public void takeOff() {
-        System.out.println(this + " is taking off");
-        flying = true;
-        takenOff = true;
+    private void promoteWaitlisted() {
+        Iterator<Passenger> waiting = waitlist.iterator();
+        while (passengers.size() < seats && waiting.hasNext()) {
+            Passenger passenger = waiting.next();
+            waiting.remove();
+            board(passenger);
+        }
     }
 
-    public void land() {
-        System.out.println(this + " is landing");
-        flying = false;
-        landed = true;
+    private boolean board(Passenger passenger) {
+        if (!passengers.add(passenger)) {
+            return false;
+        }
+        if (!waitlist.isEmpty()) {
+            waitlist.remove(passenger);
+        }
+        if (passengersByName != null) {
+            passengersByName.add(passenger);
+        }
+        if (getJournal() != null) {
+            getJournal().passengerAdded(this, passenger);
+        }
+        return true;
+    }
+
+    private boolean unboard(Passenger passenger) {
+        if (passengersByName != null) {
+            // the index is sorted by name, so it needs the instance on board rather than an equal one
+            Passenger boarded = passengers.get(passenger);
+            if (boarded == null) {
+                return false;
+            }
+            passengersByName.remove(boarded);
+            passenger = boarded;
+        }
+        if (!passengers.remove(passenger)) {
+            return false;
+        }
+        if (getJournal() != null) {
+            getJournal().passengerRemoved(this, passenger);
+        }
+        return true;
     }
 
 }
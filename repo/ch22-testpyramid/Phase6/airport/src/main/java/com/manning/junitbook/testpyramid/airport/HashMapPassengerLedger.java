@@ -0,0 +1,79 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ObjIntConsumer;
+
+public class HashMapPassengerLedger implements PassengerLedger {
+
+    private final Map<Passenger, Integer> amounts = new HashMap<>();
+    private final Set<Passenger> changed = new HashSet<>();
+
+    @Override
+    public void add(Passenger passenger, int amount) {
+        addAndGet(passenger, amount);
+    }
+
+    @Override
+    public int addAndGet(Passenger passenger, int amount) {
+        int total = amounts.merge(passenger, amount, Integer::sum);
+        changed.add(passenger);
+        return total;
+    }
+
+    @Override
+    public void forEachChanged(ObjIntConsumer<Passenger> action) {
+        for (Passenger passenger : changed) {
+            action.accept(passenger, amounts.get(passenger));
+        }
+        changed.clear();
+    }
+
+    @Override
+    public void put(Passenger passenger, int amount) {
+        amounts.put(passenger, amount);
+    }
+
+    @Override
+    public int get(Passenger passenger) {
+        return amounts.getOrDefault(passenger, 0);
+    }
+
+    @Override
+    public boolean contains(Passenger passenger) {
+        return amounts.containsKey(passenger);
+    }
+
+    @Override
+    public int size() {
+        return amounts.size();
+    }
+
+    @Override
+    public Map<Passenger, Integer> asMap() {
+        return Collections.unmodifiableMap(amounts);
+    }
+}
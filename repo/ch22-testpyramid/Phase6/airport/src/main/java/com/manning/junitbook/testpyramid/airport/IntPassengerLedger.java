@@ -0,0 +1,415 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Ledger keyed by the packed passenger identifier, see {@link Passenger#getIdentifierKey()}.
+ * <p>
+ * Every entry is a single {@code long} holding the changed mark in the top bit, the key in the next 31 bits
+ * and the amount in the low 32 bits, stored in an open-addressing table either in a {@code long[]} or off-heap
+ * in direct buffers, so 100 million passengers fit in 2 GB. The keys of the changed passengers are queued in an
+ * {@code int[]}. The passengers themselves are not kept: iterating {@link #asMap()} and the changed passengers
+ * resolves them from their key with the resolver given at construction. Not thread-safe.
+ */
+public class IntPassengerLedger implements PassengerLedger {
+
+    private static final int MIN_CAPACITY = 16;
+    private static final long EMPTY = 0L;
+    private static final long CHANGED = 1L << 63;
+
+    private final IntFunction<Passenger> passengerResolver;
+    private final boolean offHeap;
+    private Slots slots;
+    private long mask;
+    private int size;
+    private int[] changedKeys = new int[MIN_CAPACITY];
+    private int changedCount;
+
+    private IntPassengerLedger(IntFunction<Passenger> passengerResolver, int expectedSize, boolean offHeap) {
+        this.passengerResolver = passengerResolver;
+        this.offHeap = offHeap;
+        allocate(capacityFor(expectedSize));
+    }
+
+    public static IntPassengerLedger onHeap(IntFunction<Passenger> passengerResolver) {
+        return onHeap(passengerResolver, MIN_CAPACITY);
+    }
+
+    public static IntPassengerLedger onHeap(IntFunction<Passenger> passengerResolver, int expectedSize) {
+        return new IntPassengerLedger(passengerResolver, expectedSize, false);
+    }
+
+    /**
+     * Creates a ledger stored in direct buffers, limited by {@code -XX:MaxDirectMemorySize}.
+     */
+    public static IntPassengerLedger offHeap(IntFunction<Passenger> passengerResolver, int expectedSize) {
+        return new IntPassengerLedger(passengerResolver, expectedSize, true);
+    }
+
+    @Override
+    public void add(Passenger passenger, int amount) {
+        addAndGet(passenger, amount);
+    }
+
+    @Override
+    public int addAndGet(Passenger passenger, int amount) {
+        int key = passenger.getIdentifierKey();
+        long slot = find(key);
+        long entry = slots.get(slot);
+        if ((entry & CHANGED) == 0) {
+            if (changedCount == changedKeys.length) {
+                changedKeys = Arrays.copyOf(changedKeys, changedCount * 2);
+            }
+            changedKeys[changedCount++] = key;
+        }
+        int total = entry == EMPTY ? amount : amountOf(entry) + amount;
+        store(slot, entry, CHANGED | entry(key, total));
+        return total;
+    }
+
+    @Override
+    public void forEachChanged(ObjIntConsumer<Passenger> action) {
+        for (int i = 0; i < changedCount; i++) {
+            long slot = find(changedKeys[i]);
+            long entry = slots.get(slot) & ~CHANGED;
+            slots.set(slot, entry);
+            action.accept(resolve(keyOf(entry)), amountOf(entry));
+        }
+        changedCount = 0;
+        if (changedKeys.length > MIN_CAPACITY) {
+            changedKeys = new int[MIN_CAPACITY];
+        }
+    }
+
+    @Override
+    public void put(Passenger passenger, int amount) {
+        int key = passenger.getIdentifierKey();
+        long slot = find(key);
+        long entry = slots.get(slot);
+        store(slot, entry, (entry & CHANGED) | entry(key, amount));
+    }
+
+    @Override
+    public int get(Passenger passenger) {
+        return get(passenger.getIdentifierKey());
+    }
+
+    public int get(int key) {
+        long entry = slots.get(find(key));
+        return entry == EMPTY ? 0 : amountOf(entry);
+    }
+
+    @Override
+    public boolean contains(Passenger passenger) {
+        return slots.get(find(passenger.getIdentifierKey())) != EMPTY;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a read-only live view; lookups need no resolver, iteration resolves every passenger.
+     */
+    @Override
+    public Map<Passenger, Integer> asMap() {
+        return new AbstractMap<Passenger, Integer>() {
+            @Override
+            public Integer get(Object key) {
+                if (!(key instanceof Passenger)) {
+                    return null;
+                }
+                long entry = slots.get(find(((Passenger) key).getIdentifierKey()));
+                return entry == EMPTY ? null : amountOf(entry);
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return key instanceof Passenger && contains((Passenger) key);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Set<Entry<Passenger, Integer>> entrySet() {
+                return new AbstractSet<Entry<Passenger, Integer>>() {
+                    @Override
+                    public Iterator<Entry<Passenger, Integer>> iterator() {
+                        return new EntryIterator();
+                    }
+
+                    @Override
+                    public int size() {
+                        return size;
+                    }
+                };
+            }
+        };
+    }
+
+    private void store(long slot, long previous, long entry) {
+        slots.set(slot, entry);
+        if (previous == EMPTY) {
+            size++;
+            if (size > (slots.capacity() >>> 2) * 3) {
+                rehash();
+            }
+        }
+    }
+
+    private long find(int key) {
+        long slot = mix(key) & mask;
+        long entry;
+        while ((entry = slots.get(slot)) != EMPTY && keyOf(entry) != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        Slots old = slots;
+        allocate(old.capacity() * 2);
+        for (long i = 0; i < old.capacity(); i++) {
+            long entry = old.get(i);
+            if (entry != EMPTY) {
+                slots.set(find(keyOf(entry)), entry);
+            }
+            if (((i + 1) & DirectSlots.SEGMENT_MASK) == 0 || i + 1 == old.capacity()) {
+                // off-heap, every copied segment is freed right away instead of waiting for the garbage collector
+                old.release(i >>> DirectSlots.SEGMENT_SHIFT);
+            }
+        }
+    }
+
+    private void allocate(long capacity) {
+        slots = offHeap ? new DirectSlots(capacity) : new HeapSlots(capacity);
+        mask = capacity - 1;
+    }
+
+    private static long capacityFor(int expectedSize) {
+        long capacity = MIN_CAPACITY;
+        while (capacity / 4 * 3 < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static long entry(int key, int amount) {
+        return ((long) key << 32) | (amount & 0xFFFFFFFFL);
+    }
+
+    private static int keyOf(long entry) {
+        return (int) (entry >>> 32) & Integer.MAX_VALUE;
+    }
+
+    private static int amountOf(long entry) {
+        return (int) entry;
+    }
+
+    // murmur3 finalizer, the packed identifiers are far from uniformly distributed in the low bits
+    private static long mix(int key) {
+        int h = key;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h & 0xFFFFFFFFL;
+    }
+
+    private Passenger resolve(int key) {
+        Passenger passenger = passengerResolver.apply(key);
+        if (passenger == null) {
+            throw new IllegalStateException("Cannot resolve the passenger with identifier key " + key);
+        }
+        return passenger;
+    }
+
+    private class EntryIterator implements Iterator<Map.Entry<Passenger, Integer>> {
+        private long next = advance(0);
+
+        @Override
+        public boolean hasNext() {
+            return next < slots.capacity();
+        }
+
+        @Override
+        public Map.Entry<Passenger, Integer> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            long entry = slots.get(next);
+            next = advance(next + 1);
+            return new AbstractMap.SimpleImmutableEntry<>(resolve(keyOf(entry)), amountOf(entry));
+        }
+
+        private long advance(long from) {
+            long slot = from;
+            while (slot < slots.capacity() && slots.get(slot) == EMPTY) {
+                slot++;
+            }
+            return slot;
+        }
+    }
+
+    private interface Slots {
+        long capacity();
+
+        long get(long index);
+
+        void set(long index, long value);
+
+        /**
+         * Frees the memory of a segment that is no longer used.
+         */
+        default void release(long segment) {
+        }
+    }
+
+    private static class HeapSlots implements Slots {
+        private final long[] values;
+
+        HeapSlots(long capacity) {
+            if (capacity > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Ledger too large for the heap, use an off-heap ledger");
+            }
+            values = new long[(int) capacity];
+        }
+
+        @Override
+        public long capacity() {
+            return values.length;
+        }
+
+        @Override
+        public long get(long index) {
+            return values[(int) index];
+        }
+
+        @Override
+        public void set(long index, long value) {
+            values[(int) index] = value;
+        }
+    }
+
+    // direct buffers are limited to 2 GB each, so the table is split into segments of 2^24 entries
+    private static class DirectSlots implements Slots {
+        private static final int SEGMENT_SHIFT = 24;
+        private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+        private static final Consumer<ByteBuffer> FREE = bufferFreer();
+
+        private final long capacity;
+        private final ByteBuffer[] buffers;
+        private final LongBuffer[] segments;
+
+        DirectSlots(long capacity) {
+            this.capacity = capacity;
+            long segmentEntries = Math.min(capacity, 1L << SEGMENT_SHIFT);
+            buffers = new ByteBuffer[(int) ((capacity + segmentEntries - 1) / segmentEntries)];
+            segments = new LongBuffer[buffers.length];
+            for (int i = 0; i < segments.length; i++) {
+                // direct buffers are zeroed, which is the EMPTY entry
+                buffers[i] = ByteBuffer.allocateDirect((int) (segmentEntries * Long.BYTES)).order(ByteOrder.nativeOrder());
+                segments[i] = buffers[i].asLongBuffer();
+            }
+        }
+
+        @Override
+        public long capacity() {
+            return capacity;
+        }
+
+        @Override
+        public long get(long index) {
+            return segments[(int) (index >>> SEGMENT_SHIFT)].get((int) (index & SEGMENT_MASK));
+        }
+
+        @Override
+        public void set(long index, long value) {
+            segments[(int) (index >>> SEGMENT_SHIFT)].put((int) (index & SEGMENT_MASK), value);
+        }
+
+        @Override
+        public void release(long segment) {
+            segments[(int) segment] = null;
+            FREE.accept(buffers[(int) segment]);
+            buffers[(int) segment] = null;
+        }
+
+        // Unsafe.invokeCleaner from Java 9, the cleaner of the buffer before; if neither is accessible,
+        // the buffers are left to the garbage collector
+        private static Consumer<ByteBuffer> bufferFreer() {
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                Object unsafe = theUnsafe.get(null);
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                return buffer -> {
+                    try {
+                        invokeCleaner.invoke(unsafe, buffer);
+                    } catch (ReflectiveOperationException e) {
+                        throw new IllegalStateException("Cannot free a direct buffer", e);
+                    }
+                };
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // Java 8
+            }
+            try {
+                Method cleaner = ByteBuffer.allocateDirect(1).getClass().getMethod("cleaner");
+                cleaner.setAccessible(true);
+                Method clean = cleaner.getReturnType().getMethod("clean");
+                clean.setAccessible(true);
+                return buffer -> {
+                    try {
+                        clean.invoke(cleaner.invoke(buffer));
+                    } catch (ReflectiveOperationException e) {
+                        throw new IllegalStateException("Cannot free a direct buffer", e);
+                    }
+                };
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return buffer -> {
+                };
+            }
+        }
+    }
+}
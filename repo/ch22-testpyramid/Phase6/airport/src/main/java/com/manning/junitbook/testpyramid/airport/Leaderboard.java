@@ -0,0 +1,189 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The passengers with the highest totals, maintained as the totals grow.
+ * <p>
+ * The leaders are kept in a min-heap indexed by passenger, so recording a total costs {@code O(log k)} and the
+ * leaderboard is read without sorting the other passengers. Once the leaderboard is full, a total that does not beat
+ * the last leader is dismissed without locking.
+ * <p>
+ * The exact mode ranks the totals it is given. The approximate mode ignores them and estimates every total from the
+ * recorded amounts with a count-min sketch, in a memory that does not grow with the number of passengers; an estimate
+ * may exceed the real total, never fall below it. Amounts must not be negative. The sketch is updated under one of
+ * several locks striped by passenger, which keeps the additions of a passenger in order, and the leaderboard itself
+ * is only locked by the estimates that beat the last leader.
+ */
+public class Leaderboard {
+
+    private static final int STRIPES = 64;
+
+    private final int capacity;
+    // null in the exact mode
+    private final CountMinSketch sketch;
+    // null in the exact mode
+    private final Object[] stripes;
+    private final Passenger[] passengers;
+    private final long[] totals;
+    private final Map<Passenger, Integer> positions = new HashMap<>();
+    private int size;
+    // total of the last leader once the leaderboard is full; it only grows
+    private volatile long threshold = Long.MIN_VALUE;
+
+    private Leaderboard(int capacity, CountMinSketch sketch) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.sketch = sketch;
+        this.stripes = sketch == null ? null : new Object[STRIPES];
+        if (stripes != null) {
+            for (int i = 0; i < STRIPES; i++) {
+                stripes[i] = new Object();
+            }
+        }
+        this.passengers = new Passenger[capacity];
+        this.totals = new long[capacity];
+    }
+
+    public static Leaderboard exact(int capacity) {
+        return new Leaderboard(capacity, null);
+    }
+
+    /**
+     * @param epsilon the overestimation of a total, as a fraction of the sum of all the amounts
+     * @param delta   the probability that an estimate exceeds that bound
+     */
+    public static Leaderboard approximate(int capacity, double epsilon, double delta) {
+        return new Leaderboard(capacity, new CountMinSketch(epsilon, delta));
+    }
+
+    public boolean isApproximate() {
+        return sketch != null;
+    }
+
+    /**
+     * Records that the passenger travelled the amount and now has the given total, and returns the total
+     * the passenger is ranked on, which is an estimate in the approximate mode.
+     */
+    public long record(Passenger passenger, int amount, long total) {
+        if (sketch != null) {
+            int key = passenger.getIdentifierKey();
+            synchronized (stripes[key & (STRIPES - 1)]) {
+                total = sketch.add(key, amount);
+            }
+        }
+        if (total <= threshold) {
+            return total;
+        }
+        synchronized (this) {
+            offer(passenger, total);
+            return total;
+        }
+    }
+
+    /**
+     * Returns the leaders and their totals, the highest total first.
+     */
+    public synchronized List<Map.Entry<Passenger, Long>> getLeaders() {
+        List<Map.Entry<Passenger, Long>> leaders = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            leaders.add(new AbstractMap.SimpleImmutableEntry<>(passengers[i], totals[i]));
+        }
+        leaders.sort(Map.Entry.<Passenger, Long>comparingByValue().reversed());
+        return leaders;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private void offer(Passenger passenger, long total) {
+        Integer position = positions.get(passenger);
+        if (position != null) {
+            // totals arrive out of order when several threads add distances to the same passenger
+            if (total > totals[position]) {
+                totals[position] = total;
+                siftDown(position);
+            }
+        } else if (size < capacity) {
+            place(size, passenger, total);
+            siftUp(size++);
+        } else if (total > totals[0]) {
+            positions.remove(passengers[0]);
+            place(0, passenger, total);
+            siftDown(0);
+        }
+        if (size == capacity) {
+            threshold = totals[0];
+        }
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (totals[parent] <= totals[position]) {
+                return;
+            }
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int smallest = position;
+            int left = 2 * position + 1;
+            int right = left + 1;
+            if (left < size && totals[left] < totals[smallest]) {
+                smallest = left;
+            }
+            if (right < size && totals[right] < totals[smallest]) {
+                smallest = right;
+            }
+            if (smallest == position) {
+                return;
+            }
+            swap(position, smallest);
+            position = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        Passenger passenger = passengers[i];
+        long total = totals[i];
+        place(i, passengers[j], totals[j]);
+        place(j, passenger, total);
+    }
+
+    private void place(int position, Passenger passenger, long total) {
+        passengers[position] = passenger;
+        totals[position] = total;
+        positions.put(passenger, position);
+    }
+}
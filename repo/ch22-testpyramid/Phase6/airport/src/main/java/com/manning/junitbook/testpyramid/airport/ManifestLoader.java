@@ -0,0 +1,226 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Loads passenger manifests with lines such as {@code 123-45-6789; John Smith; US; Y}, the last VIP column being optional.
+ * <p>
+ * The file is memory-mapped and split into chunks at line boundaries, which are parsed in parallel.
+ * Fields are located by offsets in the mapped bytes and trimmed there, so only the final identifier
+ * and name strings are created; country codes come from {@link PassengerValidator#isoCountryCode(char, char)}.
+ * The VIP marks are only applied once all the chunks are parsed, on the calling thread, since a registered
+ * passenger may be shared with other threads.
+ */
+public class ManifestLoader {
+
+    private static final int MIN_CHUNK_SIZE = 1 << 16;
+    private static final int MAX_CHUNK_SIZE = 1 << 30;
+    private static final int FIELDS = 4;
+
+    private final int parallelism;
+    private final PassengerRegistry registry;
+
+    public ManifestLoader() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ManifestLoader(int parallelism) {
+        this(parallelism, null);
+    }
+
+    /**
+     * Creates a loader returning the passengers of the registry, so that a passenger found in several
+     * manifests is a single instance. The name of an already registered passenger is not read again.
+     */
+    public ManifestLoader(int parallelism, PassengerRegistry registry) {
+        this.parallelism = parallelism;
+        this.registry = registry;
+    }
+
+    public Flight loadFlight(String flightNumber, int seats, Path file) throws IOException {
+        Flight flight = new Flight(flightNumber, seats);
+        for (Passenger passenger : loadPassengers(file)) {
+            flight.addPassenger(passenger);
+        }
+        return flight;
+    }
+
+    /**
+     * Returns the passengers of the manifest, in file order.
+     */
+    public List<Passenger> loadPassengers(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] boundaries = chunkBoundaries(channel);
+            List<Chunk> chunks;
+            try {
+                chunks = IntStream.range(0, boundaries.length - 1)
+                        .parallel()
+                        .mapToObj(chunk -> parseChunk(channel, boundaries[chunk], boundaries[chunk + 1]))
+                        .collect(Collectors.toList());
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            List<Passenger> passengers = new ArrayList<>();
+            for (Chunk chunk : chunks) {
+                passengers.addAll(chunk.passengers);
+                for (Passenger vip : chunk.vips) {
+                    vip.setVip(true);
+                }
+            }
+            return passengers;
+        }
+    }
+
+    private long[] chunkBoundaries(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long chunks = Math.max(1, Math.min(parallelism, size / MIN_CHUNK_SIZE));
+        chunks = Math.max(chunks, (size + MAX_CHUNK_SIZE / 2 - 1) / (MAX_CHUNK_SIZE / 2));
+        long[] boundaries = new long[(int) chunks + 1];
+        boundaries[boundaries.length - 1] = size;
+        for (int i = 1; i < chunks; i++) {
+            boundaries[i] = Math.max(boundaries[i - 1], nextLineStart(channel, size * i / chunks));
+        }
+        return boundaries;
+    }
+
+    private static long nextLineStart(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long offset = position;
+        while (channel.read(buffer, offset) > 0) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                offset++;
+                if (buffer.get() == '\n') {
+                    return offset;
+                }
+            }
+            buffer.clear();
+        }
+        return channel.size();
+    }
+
+    private Chunk parseChunk(FileChannel channel, long start, long end) {
+        Chunk chunk = new Chunk();
+        if (start >= end) {
+            return chunk;
+        }
+        MappedByteBuffer bytes;
+        try {
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int[] fieldStarts = new int[FIELDS];
+        int[] fieldEnds = new int[FIELDS];
+        byte[] scratch = new byte[256];
+        int limit = bytes.limit();
+        int lineStart = 0;
+        while (lineStart < limit) {
+            int fields = 0;
+            int fieldStart = lineStart;
+            int position = lineStart;
+            while (position < limit && bytes.get(position) != '\n') {
+                if (bytes.get(position) == ';' && fields < FIELDS - 1) {
+                    fieldStarts[fields] = fieldStart;
+                    fieldEnds[fields++] = position;
+                    fieldStart = position + 1;
+                }
+                position++;
+            }
+            fieldStarts[fields] = fieldStart;
+            fieldEnds[fields++] = position;
+            trim(bytes, fieldStarts, fieldEnds, fields);
+            if (fields > 1 || fieldEnds[0] > fieldStarts[0]) {
+                Passenger passenger = toPassenger(bytes, fieldStarts, fieldEnds, fields, scratch, start + lineStart);
+                chunk.passengers.add(passenger);
+                if (fields == FIELDS && fieldEnds[3] - fieldStarts[3] == 1 && bytes.get(fieldStarts[3]) == 'Y') {
+                    chunk.vips.add(passenger);
+                }
+            }
+            lineStart = position + 1;
+        }
+        return chunk;
+    }
+
+    private static void trim(ByteBuffer bytes, int[] starts, int[] ends, int fields) {
+        for (int i = 0; i < fields; i++) {
+            while (starts[i] < ends[i] && (bytes.get(starts[i]) & 0xFF) <= ' ') {
+                starts[i]++;
+            }
+            while (ends[i] > starts[i] && (bytes.get(ends[i] - 1) & 0xFF) <= ' ') {
+                ends[i]--;
+            }
+        }
+    }
+
+    private Passenger toPassenger(ByteBuffer bytes, int[] starts, int[] ends, int fields, byte[] scratch, long offset) {
+        if (fields < 3) {
+            throw new RuntimeException("Invalid manifest line at byte " + offset);
+        }
+        String identifier = string(bytes, starts[0], ends[0], scratch);
+        if (registry != null) {
+            Passenger registered = registry.get(identifier);
+            if (registered != null) {
+                return registered;
+            }
+        }
+        String name = string(bytes, starts[1], ends[1], scratch);
+        String countryCode = ends[2] - starts[2] == 2
+                ? PassengerValidator.isoCountryCode((char) bytes.get(starts[2]), (char) bytes.get(starts[2] + 1))
+                : null;
+        if (countryCode == null) {
+            countryCode = string(bytes, starts[2], ends[2], scratch);
+        }
+        Passenger passenger = new Passenger(identifier, name, countryCode);
+        if (registry != null) {
+            passenger = registry.intern(passenger);
+        }
+        return passenger;
+    }
+
+    private static String string(ByteBuffer bytes, int start, int end, byte[] scratch) {
+        int length = end - start;
+        byte[] target = length <= scratch.length ? scratch : new byte[length];
+        for (int i = 0; i < length; i++) {
+            target[i] = bytes.get(start + i);
+        }
+        return new String(target, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // the passengers of a chunk in file order, and those marked as VIPs
+    private static final class Chunk {
+        private final List<Passenger> passengers = new ArrayList<>();
+        private final List<Passenger> vips = new ArrayList<>();
+    }
+}
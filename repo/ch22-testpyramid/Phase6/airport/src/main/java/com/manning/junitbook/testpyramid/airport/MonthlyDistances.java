@@ -0,0 +1,143 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport;
+
+import java.time.Year;
+import java.time.YearMonth;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Distances travelled by every passenger during each of the last months.
+ * <p>
+ * Every passenger has a ring of {@code retainedMonths + 1} cumulative totals: the slot of a month holds the distance
+ * travelled up to the end of that month. Any window is the difference of two slots, so rolling and calendar windows
+ * are answered in constant time however long the history is. Moving to a new month copies the latest total into
+ * the slots of the months in between, at most once per slot. Windows may not start more than
+ * {@code retainedMonths} months before the latest month with a distance. Thread-safe.
+ */
+public class MonthlyDistances {
+
+    private final int retainedMonths;
+    private final ConcurrentMap<Passenger, Ring> rings = new ConcurrentHashMap<>();
+
+    public MonthlyDistances(int retainedMonths) {
+        if (retainedMonths <= 0) {
+            throw new IllegalArgumentException("Retained months must be positive");
+        }
+        this.retainedMonths = retainedMonths;
+    }
+
+    public int getRetainedMonths() {
+        return retainedMonths;
+    }
+
+    public void add(Passenger passenger, YearMonth month, int distance) {
+        int index = index(month);
+        Ring ring = rings.get(passenger);
+        if (ring == null) {
+            ring = rings.computeIfAbsent(passenger, key -> new Ring(retainedMonths + 1, index));
+        }
+        ring.add(index, distance);
+    }
+
+    /**
+     * Returns the distance travelled by the passenger from the first to the last month, both included.
+     */
+    public long getDistance(Passenger passenger, YearMonth from, YearMonth to) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("The window must not end before it starts");
+        }
+        Ring ring = rings.get(passenger);
+        return ring == null ? 0 : ring.between(index(from), index(to));
+    }
+
+    public long getDistance(Passenger passenger, Year year) {
+        return getDistance(passenger, year.atMonth(1), year.atMonth(12));
+    }
+
+    /**
+     * Returns the distance travelled by the passenger during the {@code months} months ending with {@code lastMonth}.
+     */
+    public long getRollingDistance(Passenger passenger, YearMonth lastMonth, int months) {
+        if (months <= 0) {
+            throw new IllegalArgumentException("The window must cover at least a month");
+        }
+        return getDistance(passenger, lastMonth.minusMonths(months - 1), lastMonth);
+    }
+
+    private static int index(YearMonth month) {
+        return month.getYear() * 12 + month.getMonthValue() - 1;
+    }
+
+    private static final class Ring {
+        private final long[] totals;
+        // before the first month, the total is 0
+        private int firstMonth;
+        private int latestMonth;
+
+        Ring(int length, int month) {
+            this.totals = new long[length];
+            this.firstMonth = month;
+            this.latestMonth = month;
+        }
+
+        synchronized void add(int month, int distance) {
+            if (month > latestMonth) {
+                long latest = totals[slot(latestMonth)];
+                for (int m = Math.max(latestMonth + 1, month - totals.length + 1); m <= month; m++) {
+                    totals[slot(m)] = latest;
+                }
+                latestMonth = month;
+            }
+            firstMonth = Math.min(firstMonth, month);
+            // a late distance shifts the totals of its month and of every later month
+            for (int m = Math.max(month, oldestMonth()); m <= latestMonth; m++) {
+                totals[slot(m)] += distance;
+            }
+        }
+
+        synchronized long between(int from, int to) {
+            return totalAt(to) - totalAt(from - 1);
+        }
+
+        private long totalAt(int month) {
+            if (month >= latestMonth) {
+                return totals[slot(latestMonth)];
+            }
+            if (month < firstMonth) {
+                return 0;
+            }
+            if (month < oldestMonth()) {
+                throw new IllegalArgumentException("The window starts before the retained months");
+            }
+            return totals[slot(month)];
+        }
+
+        private int oldestMonth() {
+            return latestMonth - totals.length + 1;
+        }
+
+        private int slot(int month) {
+            return Math.floorMod(month, totals.length);
+        }
+    }
+}
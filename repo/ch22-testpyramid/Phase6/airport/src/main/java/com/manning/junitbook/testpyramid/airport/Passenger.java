@@ -20,33 +20,29 @@
  */
 package com.manning.junitbook.testpyramid.airport;
 
-import java.util.Arrays;
-import java.util.Locale;
 import java.util.Objects;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class Passenger {
 
     private String identifier;
     private String name;
     private String countryCode;
-    private final Pattern pattern;
+    private final boolean usIdentifier;
     private boolean vip;
+    private int identifierKey;
+    private int hash;
 
     public Passenger(String identifier, String name, String countryCode) {
-        String ssnRegex = "^(?!000|666)[0-8][0-9]{2}-(?!00)[0-9]{2}-(?!0000)[0-9]{4}$";
-        String nonUsIdentifierRegex = "^(?!000|666)9[0-9]{2}-(?!00)[0-9]{2}-(?!0000)[0-9]{4}$";
-        pattern = countryCode.equals("US") ? Pattern.compile(ssnRegex) : Pattern.compile(nonUsIdentifierRegex);
-        Matcher matcher = pattern.matcher(identifier);
-        if (!matcher.matches()) {
+        usIdentifier = PassengerValidator.isUsCountryCode(countryCode);
+        if (!PassengerValidator.isValidIdentifier(identifier, usIdentifier)) {
             throw new RuntimeException("Invalid identifier");
         }
-        if (!Arrays.asList(Locale.getISOCountries()).contains(countryCode)) {
+        if (!PassengerValidator.isValidCountryCode(countryCode)) {
             throw new RuntimeException("Invalid country code");
         }
 
         this.identifier = identifier;
+        this.identifierKey = PassengerValidator.identifierKey(identifier);
         this.name = name;
         this.countryCode = countryCode;
     }
@@ -55,12 +51,20 @@ public class Passenger {
         return identifier;
     }
 
+    /**
+     * Returns the identifier packed into an int, e.g. 123456789 for {@code 123-45-6789}.
+     */
+    public int getIdentifierKey() {
+        return identifierKey;
+    }
+
     public void setIdentifier(String identifier) {
-        Matcher matcher = pattern.matcher(identifier);
-        if (!matcher.matches()) {
+        if (!PassengerValidator.isValidIdentifier(identifier, usIdentifier)) {
             throw new RuntimeException("Invalid identifier");
         }
         this.identifier = identifier;
+        this.identifierKey = PassengerValidator.identifierKey(identifier);
+        this.hash = 0;
     }
 
     public String getName() {
@@ -76,7 +80,7 @@ public class Passenger {
     }
 
     public void setCountryCode(String countryCode) {
-        if (!Arrays.asList(Locale.getISOCountries()).contains(countryCode)) {
+        if (!PassengerValidator.isValidCountryCode(countryCode)) {
             throw new RuntimeException("Invalid country code");
         }
         this.countryCode = countryCode;
@@ -105,8 +109,12 @@ public class Passenger {
 
     @Override
     public int hashCode() {
-        return Objects.hash(identifier);
+        int h = hash;
+        if (h == 0) {
+            h = identifier.hashCode();
+            hash = h;
+        }
+        return h;
     }
 
-
 }
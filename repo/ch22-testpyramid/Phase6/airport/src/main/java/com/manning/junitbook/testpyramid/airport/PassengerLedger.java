@@ -0,0 +1,64 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport;
+
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Integer amounts kept per passenger, such as the travelled distances or the given points.
+ */
+public interface PassengerLedger {
+
+    /**
+     * Adds the amount to the passenger and marks the passenger as changed.
+     */
+    void add(Passenger passenger, int amount);
+
+    /**
+     * Adds the amount like {@link #add(Passenger, int)} and returns the new amount of the passenger, found by the
+     * same lookup.
+     */
+    int addAndGet(Passenger passenger, int amount);
+
+    /**
+     * Calls the action with every passenger whose amount was added to since the previous call, and its amount,
+     * and clears their marks. A thread-safe ledger does not run two actions for the same passenger at the same
+     * time, so what they derive from the amounts is written in the order the amounts were read.
+     */
+    void forEachChanged(ObjIntConsumer<Passenger> action);
+
+    void put(Passenger passenger, int amount);
+
+    /**
+     * Returns the amount of the passenger, or 0 if the passenger is not in the ledger.
+     */
+    int get(Passenger passenger);
+
+    boolean contains(Passenger passenger);
+
+    int size();
+
+    /**
+     * Returns a read-only map of the ledger.
+     */
+    Map<Passenger, Integer> asMap();
+}
@@ -0,0 +1,292 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Compact set of the passengers of a flight.
+ * <p>
+ * Every passenger sits on a seat: the occupied seats are kept in a bitset and the passengers
+ * in an array indexed by seat. Lookups go through an open-addressing index keyed by the
+ * passenger identifier, which stores seat numbers only, so an entry costs a few bytes instead
+ * of a {@code HashMap.Node}. Iteration follows the seat order, and a Fenwick tree counting the
+ * passengers of every block of seats finds the first seat of a page in logarithmic time.
+ */
+public class PassengerManifest extends AbstractSet<Passenger> {
+
+    private static final int MIN_SEATS = 8;
+    private static final int NO_SEAT = -1;
+    private static final int BLOCK_SHIFT = 6;
+
+    private final BitSet occupiedSeats = new BitSet();
+    private Passenger[] seatPassengers = new Passenger[MIN_SEATS];
+    // open addressing table holding seat + 1, 0 marks an empty slot; kept at most half full
+    private int[] index = new int[MIN_SEATS * 2];
+    // Fenwick tree over the number of occupied seats of each block of 64 seats, indexed from 1
+    private int[] blockCounts = new int[blocks(MIN_SEATS) + 1];
+    private int firstFreeSeat;
+    private int size;
+    private int modCount;
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Passenger && seatOf((Passenger) o) != NO_SEAT;
+    }
+
+    @Override
+    public boolean add(Passenger passenger) {
+        if (seatOf(passenger) != NO_SEAT) {
+            return false;
+        }
+        ensureCapacity(size + 1);
+        int seat = occupiedSeats.nextClearBit(firstFreeSeat);
+        if (seat >= seatPassengers.length) {
+            seatPassengers = Arrays.copyOf(seatPassengers, seatPassengers.length * 2);
+            rebuildBlockCounts();
+        }
+        occupiedSeats.set(seat);
+        updateBlockCount(seat, 1);
+        seatPassengers[seat] = passenger;
+        index[findSlot(passenger)] = seat + 1;
+        firstFreeSeat = seat + 1;
+        size++;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof Passenger)) {
+            return false;
+        }
+        Passenger passenger = (Passenger) o;
+        int slot = findSlot(passenger);
+        if (index[slot] == 0) {
+            return false;
+        }
+        removeSeat(index[slot] - 1);
+        deleteSlot(slot);
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        occupiedSeats.clear();
+        Arrays.fill(seatPassengers, null);
+        Arrays.fill(index, 0);
+        Arrays.fill(blockCounts, 0);
+        firstFreeSeat = 0;
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Returns the seat of the given passenger, or -1 if the passenger is not on the manifest.
+     */
+    public int seatOf(Passenger passenger) {
+        int seat = index[findSlot(passenger)];
+        return seat - 1;
+    }
+
+    /**
+     * Prepares the index to hold the given number of passengers without rehashing.
+     */
+    public void ensureCapacity(int passengers) {
+        if (passengers * 2 > index.length) {
+            rehash(tableSizeFor(passengers * 2));
+        }
+    }
+
+    /**
+     * Returns the passenger on board that is equal to the given one, or null if there is none.
+     */
+    public Passenger get(Passenger passenger) {
+        int seat = seatOf(passenger);
+        return seat == NO_SEAT ? null : seatPassengers[seat];
+    }
+
+    /**
+     * Returns at most {@code limit} passengers in seat order, skipping the first {@code offset} ones.
+     */
+    public List<Passenger> page(int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Offset and limit must not be negative");
+        }
+        List<Passenger> page = new ArrayList<>(Math.min(limit, Math.max(0, size - offset)));
+        if (offset >= size) {
+            return page;
+        }
+        int seat = seatAt(offset);
+        while (seat >= 0 && page.size() < limit) {
+            page.add(seatPassengers[seat]);
+            seat = occupiedSeats.nextSetBit(seat + 1);
+        }
+        return page;
+    }
+
+    @Override
+    public Iterator<Passenger> iterator() {
+        return new Iterator<Passenger>() {
+            private int nextSeat = occupiedSeats.nextSetBit(0);
+            private int lastSeat = NO_SEAT;
+            private int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return nextSeat >= 0;
+            }
+
+            @Override
+            public Passenger next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (nextSeat < 0) {
+                    throw new NoSuchElementException();
+                }
+                lastSeat = nextSeat;
+                nextSeat = occupiedSeats.nextSetBit(nextSeat + 1);
+                return seatPassengers[lastSeat];
+            }
+
+            @Override
+            public void remove() {
+                if (lastSeat == NO_SEAT) {
+                    throw new IllegalStateException();
+                }
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                PassengerManifest.this.remove(seatPassengers[lastSeat]);
+                expectedModCount = modCount;
+                lastSeat = NO_SEAT;
+            }
+        };
+    }
+
+    // returns the seat of the passenger at the given position in seat order, which must be lower than the size
+    private int seatAt(int position) {
+        int block = 0;
+        int remaining = position;
+        for (int step = Integer.highestOneBit(blockCounts.length - 1); step > 0; step >>= 1) {
+            int next = block + step;
+            if (next < blockCounts.length && blockCounts[next] <= remaining) {
+                block = next;
+                remaining -= blockCounts[next];
+            }
+        }
+        // the position is in the block that follows the ones skipped, within its 64 seats
+        int seat = occupiedSeats.nextSetBit(block << BLOCK_SHIFT);
+        for (int i = 0; i < remaining; i++) {
+            seat = occupiedSeats.nextSetBit(seat + 1);
+        }
+        return seat;
+    }
+
+    private void updateBlockCount(int seat, int delta) {
+        for (int i = (seat >> BLOCK_SHIFT) + 1; i < blockCounts.length; i += i & -i) {
+            blockCounts[i] += delta;
+        }
+    }
+
+    private void rebuildBlockCounts() {
+        blockCounts = new int[blocks(seatPassengers.length) + 1];
+        for (int seat = occupiedSeats.nextSetBit(0); seat >= 0; seat = occupiedSeats.nextSetBit(seat + 1)) {
+            blockCounts[(seat >> BLOCK_SHIFT) + 1]++;
+        }
+        for (int i = 1; i < blockCounts.length; i++) {
+            int parent = i + (i & -i);
+            if (parent < blockCounts.length) {
+                blockCounts[parent] += blockCounts[i];
+            }
+        }
+    }
+
+    private void removeSeat(int seat) {
+        occupiedSeats.clear(seat);
+        updateBlockCount(seat, -1);
+        seatPassengers[seat] = null;
+        firstFreeSeat = Math.min(firstFreeSeat, seat);
+        size--;
+        modCount++;
+    }
+
+    private int findSlot(Passenger passenger) {
+        int mask = index.length - 1;
+        int slot = spread(passenger.hashCode()) & mask;
+        while (index[slot] != 0 && !seatPassengers[index[slot] - 1].equals(passenger)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // backward shift deletion keeps the probe sequences intact without tombstones
+    private void deleteSlot(int slot) {
+        int mask = index.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (index[next] != 0) {
+            int home = spread(seatPassengers[index[next] - 1].hashCode()) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                index[hole] = index[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        index[hole] = 0;
+    }
+
+    private void rehash(int newLength) {
+        index = new int[newLength];
+        for (int seat = occupiedSeats.nextSetBit(0); seat >= 0; seat = occupiedSeats.nextSetBit(seat + 1)) {
+            index[findSlot(seatPassengers[seat])] = seat + 1;
+        }
+    }
+
+    // identifiers that differ in their last digits have nearby string hashes: scatter them, or they
+    // would form long runs in the table and every deletion would shift a whole run
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int blocks(int seats) {
+        return (seats + (1 << BLOCK_SHIFT) - 1) >> BLOCK_SHIFT;
+    }
+
+    private static int tableSizeFor(int capacity) {
+        int n = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        return n < 0 ? 1 << 30 : n;
+    }
+}
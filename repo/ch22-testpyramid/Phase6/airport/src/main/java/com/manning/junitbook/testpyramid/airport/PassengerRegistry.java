@@ -0,0 +1,65 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Canonical passengers, one instance per identifier, to be shared by all the flights and distance managers.
+ * <p>
+ * The identifier of a registered passenger must not be changed, as the registry would keep it under the old one.
+ */
+public class PassengerRegistry {
+
+    private final ConcurrentMap<String, Passenger> passengers = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the registered passenger with the identifier of the given passenger, registering it if there is none.
+     */
+    public Passenger intern(Passenger passenger) {
+        Passenger registered = passengers.putIfAbsent(passenger.getIdentifier(), passenger);
+        return registered == null ? passenger : registered;
+    }
+
+    /**
+     * Returns the registered passenger with the given identifier, creating and registering it if there is none.
+     * The name and country code are only used, and validated, when the passenger is created.
+     */
+    public Passenger intern(String identifier, String name, String countryCode) {
+        Passenger registered = passengers.get(identifier);
+        if (registered != null) {
+            return registered;
+        }
+        return intern(new Passenger(identifier, name, countryCode));
+    }
+
+    /**
+     * Returns the registered passenger with the given identifier, or null if there is none.
+     */
+    public Passenger get(String identifier) {
+        return passengers.get(identifier);
+    }
+
+    public int size() {
+        return passengers.size();
+    }
+}
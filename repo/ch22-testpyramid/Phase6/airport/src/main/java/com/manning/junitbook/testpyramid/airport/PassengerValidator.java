@@ -0,0 +1,159 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport;
+
+import java.util.Locale;
+
+/**
+ * Validates passenger identifiers and country codes without regular expressions and without allocating.
+ * <p>
+ * US passengers must have a social security number ({@code ^(?!000|666)[0-8][0-9]{2}-(?!00)[0-9]{2}-(?!0000)[0-9]{4}$}),
+ * the other passengers an identifier of the same shape starting with 9.
+ */
+public final class PassengerValidator {
+
+    private static final int LETTERS = 26;
+    private static final String[] ISO_COUNTRIES = new String[LETTERS * LETTERS];
+
+    static {
+        for (String country : Locale.getISOCountries()) {
+            ISO_COUNTRIES[countryIndex(country.charAt(0), country.charAt(1))] = country;
+        }
+    }
+
+    private PassengerValidator() {
+    }
+
+    public static ValidationResult validate(String identifier, String countryCode) {
+        if (!isValidIdentifier(identifier, isUsCountryCode(countryCode))) {
+            return ValidationResult.INVALID_IDENTIFIER;
+        }
+        if (!isValidCountryCode(countryCode)) {
+            return ValidationResult.INVALID_COUNTRY_CODE;
+        }
+        return ValidationResult.VALID;
+    }
+
+    /**
+     * Validates a batch of rows, writing the result of each row into {@code results}.
+     *
+     * @return the number of valid rows
+     */
+    public static int validateAll(String[] identifiers, String[] countryCodes, ValidationResult[] results) {
+        if (identifiers.length != countryCodes.length || results.length < identifiers.length) {
+            throw new IllegalArgumentException("Identifiers, country codes and results must have matching lengths");
+        }
+        int valid = 0;
+        for (int i = 0; i < identifiers.length; i++) {
+            results[i] = validate(identifiers[i], countryCodes[i]);
+            if (results[i] == ValidationResult.VALID) {
+                valid++;
+            }
+        }
+        return valid;
+    }
+
+    public static boolean isUsCountryCode(String countryCode) {
+        return "US".equals(countryCode);
+    }
+
+    public static boolean isValidIdentifier(String identifier, boolean us) {
+        int key = identifierKey(identifier);
+        if (key < 0) {
+            return false;
+        }
+        int area = key / 1_000_000;
+        int group = key / 10_000 % 100;
+        int serial = key % 10_000;
+        if (group == 0 || serial == 0) {
+            return false;
+        }
+        if (us) {
+            return area < 900 && area != 0 && area != 666;
+        }
+        return area >= 900;
+    }
+
+    /**
+     * Packs a well-formed identifier such as {@code 123-45-6789} into the int {@code 123456789}.
+     *
+     * @return the packed identifier, or -1 if the identifier is not made of 3, 2 and 4 digits
+     */
+    public static int identifierKey(String identifier) {
+        if (identifier == null || identifier.length() != 11
+                || identifier.charAt(3) != '-' || identifier.charAt(6) != '-') {
+            return -1;
+        }
+        int area = digits(identifier, 0, 3);
+        int group = digits(identifier, 4, 6);
+        int serial = digits(identifier, 7, 11);
+        if (area < 0 || group < 0 || serial < 0) {
+            return -1;
+        }
+        return area * 1_000_000 + group * 10_000 + serial;
+    }
+
+    /**
+     * Unpacks an identifier packed by {@link #identifierKey(String)}, e.g. {@code 123-45-6789} for 123456789.
+     */
+    public static String identifier(int key) {
+        if (key < 0 || key > 999_999_999) {
+            throw new IllegalArgumentException("Not a packed identifier: " + key);
+        }
+        return String.format("%03d-%02d-%04d", key / 1_000_000, key / 10_000 % 100, key % 10_000);
+    }
+
+    public static boolean isValidCountryCode(String countryCode) {
+        if (countryCode == null || countryCode.length() != 2) {
+            return false;
+        }
+        return isoCountryCode(countryCode.charAt(0), countryCode.charAt(1)) != null;
+    }
+
+    /**
+     * Returns the shared ISO 3166 country code string made of the two letters, or null if there is no such country.
+     */
+    public static String isoCountryCode(char first, char second) {
+        int index = countryIndex(first, second);
+        return index < 0 ? null : ISO_COUNTRIES[index];
+    }
+
+    private static int countryIndex(char firstLetter, char secondLetter) {
+        int first = firstLetter - 'A';
+        int second = secondLetter - 'A';
+        if (first < 0 || first >= LETTERS || second < 0 || second >= LETTERS) {
+            return -1;
+        }
+        return first * LETTERS + second;
+    }
+
+    private static int digits(String text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
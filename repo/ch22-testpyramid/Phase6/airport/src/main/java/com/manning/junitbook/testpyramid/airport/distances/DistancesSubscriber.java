@@ -0,0 +1,100 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport.distances;
+
+import com.manning.junitbook.testpyramid.airport.DistancesManager;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adds the published distances to a {@link DistancesManager}, requesting them in batches so that no more than
+ * one batch is ever outstanding. The points are calculated after every batch and once the stream terminates.
+ */
+public class DistancesSubscriber implements Subscriber<PassengerDistance> {
+
+    private final DistancesManager distancesManager;
+    private final int batchSize;
+    private final CountDownLatch terminated = new CountDownLatch(1);
+    private Subscription subscription;
+    private int received;
+    private volatile Throwable error;
+
+    public DistancesSubscriber(DistancesManager distancesManager, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.distancesManager = distancesManager;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        if (this.subscription != null) {
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        subscription.request(batchSize);
+    }
+
+    @Override
+    public void onNext(PassengerDistance distance) {
+        distancesManager.addDistance(distance.getPassenger(), distance.getDistance());
+        if (++received == batchSize) {
+            received = 0;
+            distancesManager.calculateGivenPoints();
+            subscription.request(batchSize);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        error = throwable;
+        distancesManager.calculateGivenPoints();
+        terminated.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+        distancesManager.calculateGivenPoints();
+        terminated.countDown();
+    }
+
+    public void cancel() {
+        subscription.cancel();
+    }
+
+    /**
+     * Waits for the stream to complete or fail.
+     *
+     * @return false if the stream did not terminate in time
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport.distances;
+
+import com.manning.junitbook.testpyramid.airport.AbstractFlight;
+import com.manning.junitbook.testpyramid.airport.Passenger;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the distance flown by every passenger of the flights that land.
+ * <p>
+ * A flight given this publisher through {@link AbstractFlight#setLandingPublisher(LandingDistancesPublisher)} hands
+ * it every landing on the landing thread, which copies the manifest into a bounded buffer per subscriber. A landing
+ * only turns into passenger distances as the subscriber requests them, and when a buffer is full the landing waits
+ * for room: a slow subscriber holds back the landings instead of losing them or filling the memory. Unlike the
+ * lossy {@link com.manning.junitbook.testpyramid.airport.events.FlightEventPipeline}, no landing is ever dropped.
+ * <p>
+ * All the signals of a subscriber, {@code onSubscribe} included, are delivered one at a time on the executor.
+ */
+public class LandingDistancesPublisher implements Publisher<PassengerDistance>, AutoCloseable {
+
+    private final int capacity;
+    private final Executor executor;
+    private final List<LandingSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    /**
+     * @param capacity the number of landings buffered for each subscriber
+     * @param executor the executor delivering the distances to the subscribers
+     */
+    public LandingDistancesPublisher(int capacity, Executor executor) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super PassengerDistance> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        LandingSubscription subscription = new LandingSubscription(subscriber);
+        subscriptions.add(subscription);
+        if (closed) {
+            subscription.complete();
+        } else {
+            // onSubscribe is the first signal of the delivery
+            subscription.drain();
+        }
+    }
+
+    /**
+     * Publishes the distance of every passenger of the flight, waiting while the buffer of a subscriber is full.
+     * The manifest is copied by the calling thread, and only when somebody subscribed.
+     */
+    public void publish(AbstractFlight flight) {
+        if (closed) {
+            throw new RuntimeException("The publisher is closed");
+        }
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        Landing landing = new Landing(flight.getPassengers().toArray(new Passenger[0]), flight.getDistance());
+        boolean interrupted = false;
+        for (LandingSubscription subscription : subscriptions) {
+            // an interrupt does not lose the landing: the wait goes on and the interrupt is restored afterwards
+            while (true) {
+                try {
+                    subscription.offer(landing);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getSubscribersCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Stops accepting landings; the subscribers complete once they received the distances already published.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (LandingSubscription subscription : subscriptions) {
+            subscription.complete();
+        }
+    }
+
+    private static final class Landing {
+        private final Passenger[] passengers;
+        private final int distance;
+
+        Landing(Passenger[] passengers, int distance) {
+            this.passengers = passengers;
+            this.distance = distance;
+        }
+    }
+
+    private final class LandingSubscription implements Subscription, Runnable {
+        private final Subscriber<? super PassengerDistance> subscriber;
+        private final BlockingQueue<Landing> landings = new ArrayBlockingQueue<>(capacity);
+        private final AtomicLong requested = new AtomicLong();
+        // number of drain requests; only the caller moving it from 0 schedules a delivery
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean completed;
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+        // only used by the delivery
+        private boolean subscribed;
+        // the landing being split into distances and its next passenger, only used by the delivery
+        private Landing current;
+        private int next;
+
+        LandingSubscription(Subscriber<? super PassengerDistance> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void offer(Landing landing) throws InterruptedException {
+            if (!cancelled) {
+                landings.put(landing);
+                drain();
+            }
+        }
+
+        void complete() {
+            completed = true;
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("The number of requested distances must be positive");
+            } else {
+                requested.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+            // lets a landing waiting for room go on
+            landings.clear();
+        }
+
+        void drain() {
+            if (pending.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                if (!subscribed) {
+                    subscribed = true;
+                    subscriber.onSubscribe(this);
+                }
+                if (cancelled) {
+                    return;
+                }
+                if (error != null) {
+                    cancel();
+                    subscriber.onError(error);
+                    return;
+                }
+                long demand = requested.get();
+                long emitted = 0;
+                PassengerDistance distance;
+                while (emitted < demand && !cancelled && (distance = poll()) != null) {
+                    subscriber.onNext(distance);
+                    emitted++;
+                }
+                if (emitted > 0 && demand != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+                if (completed && !cancelled && isEmpty()) {
+                    cancel();
+                    subscriber.onComplete();
+                    return;
+                }
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private PassengerDistance poll() {
+            while (current == null || next == current.passengers.length) {
+                current = landings.poll();
+                next = 0;
+                if (current == null) {
+                    return null;
+                }
+            }
+            return new PassengerDistance(current.passengers[next++], current.distance);
+        }
+
+        private boolean isEmpty() {
+            return (current == null || next == current.passengers.length) && landings.isEmpty();
+        }
+    }
+}
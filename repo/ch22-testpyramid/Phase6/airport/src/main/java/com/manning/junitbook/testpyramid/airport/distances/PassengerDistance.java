@@ -0,0 +1,50 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport.distances;
+
+import com.manning.junitbook.testpyramid.airport.Passenger;
+
+/**
+ * Distance flown by a passenger on a landed flight.
+ */
+public final class PassengerDistance {
+
+    private final Passenger passenger;
+    private final int distance;
+
+    public PassengerDistance(Passenger passenger, int distance) {
+        this.passenger = passenger;
+        this.distance = distance;
+    }
+
+    public Passenger getPassenger() {
+        return passenger;
+    }
+
+    public int getDistance() {
+        return distance;
+    }
+
+    @Override
+    public String toString() {
+        return passenger + " flew " + distance;
+    }
+}
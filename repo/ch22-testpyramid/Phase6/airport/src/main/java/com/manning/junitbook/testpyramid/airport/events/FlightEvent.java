@@ -0,0 +1,68 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport.events;
+
+import com.manning.junitbook.testpyramid.airport.AbstractFlight;
+
+/**
+ * Immutable record of a flight lifecycle change; the message is only formatted by {@link #toString()}.
+ */
+public final class FlightEvent {
+
+    private final FlightEventType type;
+    private final AbstractFlight flight;
+    private final String origin;
+    private final String destination;
+    private final long timestamp;
+
+    public FlightEvent(FlightEventType type, AbstractFlight flight) {
+        this.type = type;
+        this.flight = flight;
+        this.origin = flight.getOrigin();
+        this.destination = flight.getDestination();
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    public FlightEventType getType() {
+        return type;
+    }
+
+    public AbstractFlight getFlight() {
+        return flight;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "Flight " + flight.getFlightNumber() + " from " + origin + " to " + destination + " " + type.getDescription();
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport.events;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded, lock-free ring buffer of flight events, consumed by a background thread that hands them to the listeners.
+ * <p>
+ * Publishing never blocks and never formats anything: producers claim a sequence with a CAS and store
+ * the event in its slot, and wake the consumer up only if it is parked for lack of events. When the buffer
+ * is full the event is dropped and counted instead; the consumer reports the drops on the standard error.
+ */
+public class FlightEventPipeline implements AutoCloseable {
+
+    // set on the tail by the consumer when it stops, so that no sequence can be claimed afterwards
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    private final AtomicReferenceArray<FlightEvent> buffer;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    private final LongAdder droppedEvents = new LongAdder();
+    private final List<FlightEventListener> listeners = new CopyOnWriteArrayList<>();
+    private final Thread consumer;
+    private volatile boolean running = true;
+    // set by the consumer before it parks, so that the producers know they must wake it up
+    private volatile boolean waiting;
+    private long reportedDroppedEvents;
+
+    public FlightEventPipeline(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+        buffer = new AtomicReferenceArray<>(capacity);
+        mask = capacity - 1;
+        consumer = new Thread(this::consume, "flight-events");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * Returns a shared pipeline printing the take-offs and landings to the standard output.
+     * The flights publish to no pipeline until they are given one, so they print nothing unless given this one.
+     */
+    public static FlightEventPipeline getDefault() {
+        return DefaultPipelineHolder.PIPELINE;
+    }
+
+    public void addListener(FlightEventListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(FlightEventListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Publishes the event without blocking.
+     *
+     * @return false if the buffer was full or the pipeline closed, and the event was dropped
+     */
+    public boolean publish(FlightEvent event) {
+        long sequence;
+        do {
+            sequence = tail.get();
+            if ((sequence & CLOSED) != 0 || !running || sequence - head.get() >= buffer.length()) {
+                droppedEvents.increment();
+                return false;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+        buffer.lazySet((int) sequence & mask, event);
+        // the claim above is a volatile write the consumer reads after setting waiting, so either the consumer
+        // sees the event before parking or this producer sees it waiting
+        if (waiting) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of events dropped because the buffer was full or the pipeline closed.
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.sum();
+    }
+
+    /**
+     * Stops accepting events, waits for the consumer to hand the pending events to the listeners and stops it.
+     * An interrupt does not stop the wait; it is restored afterwards.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(consumer);
+        boolean interrupted = false;
+        while (consumer.isAlive()) {
+            try {
+                consumer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    Thread getConsumer() {
+        return consumer;
+    }
+
+    private void consume() {
+        long sequence = head.get();
+        while (true) {
+            int slot = (int) sequence & mask;
+            FlightEvent event = buffer.get(slot);
+            if (event == null) {
+                if (sequence < tail.get()) {
+                    // the producer claimed the slot and is about to fill it
+                    Thread.yield();
+                    continue;
+                }
+                if (!running) {
+                    // a producer that saw the pipeline running may still claim a sequence: the consumer only stops
+                    // once it closed the tail at the last sequence it handed over
+                    if (tail.compareAndSet(sequence, sequence | CLOSED)) {
+                        break;
+                    }
+                    continue;
+                }
+                reportDroppedEvents();
+                waiting = true;
+                if (running && sequence == tail.get()) {
+                    LockSupport.park(this);
+                }
+                waiting = false;
+                continue;
+            }
+            buffer.lazySet(slot, null);
+            head.lazySet(++sequence);
+            dispatch(event);
+        }
+        reportDroppedEvents();
+    }
+
+    private void reportDroppedEvents() {
+        long dropped = droppedEvents.sum();
+        if (dropped > reportedDroppedEvents) {
+            System.err.println("Flight events pipeline full: dropped " + (dropped - reportedDroppedEvents) + " events");
+            reportedDroppedEvents = dropped;
+        }
+    }
+
+    private void dispatch(FlightEvent event) {
+        for (FlightEventListener listener : listeners) {
+            try {
+                listener.onEvent(event);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static class DefaultPipelineHolder {
+        private static final FlightEventPipeline PIPELINE = new FlightEventPipeline(1 << 14);
+
+        static {
+            PIPELINE.addListener(event -> {
+                if (event.getType() == FlightEventType.TAKE_OFF || event.getType() == FlightEventType.LANDING) {
+                    System.out.println(event);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,437 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport.jdbc;
+
+import com.manning.junitbook.testpyramid.airport.AbstractFlight;
+import com.manning.junitbook.testpyramid.airport.Flight;
+import com.manning.junitbook.testpyramid.airport.FlightNumber;
+import com.manning.junitbook.testpyramid.airport.FlightState;
+import com.manning.junitbook.testpyramid.airport.Passenger;
+import com.manning.junitbook.testpyramid.airport.PassengerValidator;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiFunction;
+
+/**
+ * Stores the flights and their manifests with JDBC batches, writing only what changed since the last save.
+ * <p>
+ * The repository remembers what the database holds for every flight it saved or loaded, keeping the packed
+ * identifiers of its passengers rather than the passengers: saving such a flight again only updates its row if it
+ * changed, and only inserts or deletes the manifest rows of the passengers who boarded or left. A flight the
+ * repository does not know yet, possibly saved by another instance, is merged and its manifest replaced.
+ * The repository also remembers the name and VIP status the database holds for every passenger, and merges the row
+ * of a passenger of a saved flight whenever they changed, once per save however many flights the passenger is on.
+ * <p>
+ * The passenger and manifest rows, by far the most numerous, are sent {@value #ROWS_PER_STATEMENT} to a statement.
+ * A flight is loaded with its manifest by a single query.
+ */
+public class JdbcFlightRepository implements FlightRepository {
+
+    // rows sent to the database at once, all statements together
+    private static final int BATCH_SIZE = 10_000;
+    private static final int ROWS_PER_STATEMENT = 100;
+
+    private static final String MERGE_FLIGHT = "MERGE INTO FLIGHTS (SEATS, ORIGIN, DESTINATION, DISTANCE, STATE, " +
+            "FLIGHT_NUMBER) KEY (FLIGHT_NUMBER) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE_FLIGHT = "UPDATE FLIGHTS SET SEATS = ?, ORIGIN = ?, DESTINATION = ?, " +
+            "DISTANCE = ?, STATE = ? WHERE FLIGHT_NUMBER = ?";
+    private static final String MERGE_PASSENGERS = "MERGE INTO PASSENGERS (ID, NAME, COUNTRY_CODE, VIP) KEY (ID) " +
+            "VALUES ";
+    private static final String PASSENGER_ROW = "(?, ?, ?, ?)";
+    private static final String CLEAR_MANIFEST = "DELETE FROM MANIFESTS WHERE FLIGHT_NUMBER = ?";
+    private static final String INSERT_MANIFESTS = "INSERT INTO MANIFESTS (FLIGHT_NUMBER, PASSENGER_ID) VALUES ";
+    private static final String MANIFEST_ROW = "(?, ?)";
+    private static final String DELETE_MANIFEST = "DELETE FROM MANIFESTS WHERE FLIGHT_NUMBER = ? AND PASSENGER_ID = ?";
+    private static final String SELECT_FLIGHTS = "SELECT F.FLIGHT_NUMBER, F.SEATS, F.ORIGIN, F.DESTINATION, " +
+            "F.DISTANCE, F.STATE, P.ID, P.NAME, P.COUNTRY_CODE, P.VIP FROM FLIGHTS F " +
+            "LEFT JOIN MANIFESTS M ON M.FLIGHT_NUMBER = F.FLIGHT_NUMBER " +
+            "LEFT JOIN PASSENGERS P ON P.ID = M.PASSENGER_ID";
+
+    private final Connection connection;
+    private final BiFunction<FlightNumber, Integer, ? extends AbstractFlight> factory;
+    private final Map<FlightNumber, StoredFlight> stored = new HashMap<>();
+    private final Map<Integer, StoredPassenger> storedPassengers = new HashMap<>();
+
+    public JdbcFlightRepository(Connection connection) {
+        this(connection, Flight::new);
+    }
+
+    /**
+     * @param factory creates the loaded flights from their number and their seats
+     */
+    public JdbcFlightRepository(Connection connection,
+                                BiFunction<FlightNumber, Integer, ? extends AbstractFlight> factory) {
+        this.connection = connection;
+        this.factory = factory;
+    }
+
+    @Override
+    public void save(AbstractFlight flight) {
+        saveAll(Collections.singletonList(flight));
+    }
+
+    @Override
+    public void saveAll(Collection<? extends AbstractFlight> flights) {
+        Map<FlightNumber, StoredFlight> saved = new HashMap<>();
+        Map<Integer, StoredPassenger> savedPassengers = new HashMap<>();
+        inTransaction(() -> {
+            // listed in the order the batches must run, so that a manifest row never precedes its flight
+            try (Rows mergeFlight = new Rows(MERGE_FLIGHT, 6);
+                 Rows updateFlight = new Rows(UPDATE_FLIGHT, 6);
+                 Rows clearManifest = new Rows(CLEAR_MANIFEST, 1);
+                 Rows mergePassengers = new Rows(MERGE_PASSENGERS, PASSENGER_ROW, 4);
+                 Rows insertManifests = new Rows(INSERT_MANIFESTS, MANIFEST_ROW, 2);
+                 Rows deleteManifest = new Rows(DELETE_MANIFEST, 2)) {
+                Batches batches = new Batches(mergeFlight, updateFlight, clearManifest, mergePassengers, insertManifests,
+                        deleteManifest);
+                for (AbstractFlight flight : flights) {
+                    // a single pass over the manifest, which a concurrent flight may change meanwhile
+                    List<Passenger> passengers = new ArrayList<>(flight.getPassengers());
+                    StoredFlight current = new StoredFlight(flight, passengers);
+                    StoredFlight previous = stored.get(flight.getFlightNumberValue());
+                    if (previous == null) {
+                        batches.add(mergeFlight, flightRow(current));
+                        batches.add(clearManifest, current.flightNumber);
+                    } else if (!previous.sameRow(current)) {
+                        batches.add(updateFlight, flightRow(current));
+                    }
+                    for (Passenger passenger : passengers) {
+                        int key = passenger.getIdentifierKey();
+                        StoredPassenger storedPassenger = savedPassengers.get(key);
+                        if (storedPassenger == null) {
+                            storedPassenger = storedPassengers.get(key);
+                        }
+                        if (storedPassenger == null || !storedPassenger.sameRow(passenger)) {
+                            batches.add(mergePassengers, passenger.getIdentifier(), passenger.getName(),
+                                    passenger.getCountryCode(), passenger.isVip());
+                            savedPassengers.put(key, new StoredPassenger(passenger));
+                        }
+                        if (previous == null || !previous.hasPassenger(key)) {
+                            batches.add(insertManifests, current.flightNumber, passenger.getIdentifier());
+                        }
+                    }
+                    if (previous != null) {
+                        for (int key : previous.passengerKeys) {
+                            if (!current.hasPassenger(key)) {
+                                batches.add(deleteManifest, current.flightNumber, PassengerValidator.identifier(key));
+                            }
+                        }
+                    }
+                    saved.put(flight.getFlightNumberValue(), current);
+                }
+                batches.execute();
+            }
+        });
+        stored.putAll(saved);
+        storedPassengers.putAll(savedPassengers);
+    }
+
+    @Override
+    public void delete(AbstractFlight flight) {
+        inTransaction(() -> {
+            for (String sql : new String[]{"DELETE FROM MANIFESTS WHERE FLIGHT_NUMBER = ?",
+                    "DELETE FROM FLIGHTS WHERE FLIGHT_NUMBER = ?"}) {
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    statement.setString(1, flight.getFlightNumber());
+                    statement.executeUpdate();
+                }
+            }
+        });
+        stored.remove(flight.getFlightNumberValue());
+    }
+
+    @Override
+    public AbstractFlight findByFlightNumber(String flightNumber) {
+        List<AbstractFlight> flights = load(SELECT_FLIGHTS + " WHERE F.FLIGHT_NUMBER = ?", flightNumber);
+        return flights.isEmpty() ? null : flights.get(0);
+    }
+
+    @Override
+    public List<AbstractFlight> findAll() {
+        return load(SELECT_FLIGHTS + " ORDER BY F.FLIGHT_NUMBER", null);
+    }
+
+    private List<AbstractFlight> load(String sql, String flightNumber) {
+        List<AbstractFlight> flights = new ArrayList<>();
+        // the same passenger boards several flights, so every flight gets the same instance
+        Map<String, Passenger> passengers = new HashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            if (flightNumber != null) {
+                statement.setString(1, flightNumber);
+            }
+            statement.setFetchSize(BATCH_SIZE);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                AbstractFlight flight = null;
+                FlightState state = null;
+                while (resultSet.next()) {
+                    FlightNumber number = FlightNumber.valueOf(resultSet.getString(1));
+                    // the rows of a flight are adjacent, one per passenger or a single one without passenger
+                    if (flight == null || !flight.getFlightNumberValue().equals(number)) {
+                        if (flight != null) {
+                            flights.add(restored(flight, state));
+                        }
+                        flight = factory.apply(number, resultSet.getInt(2));
+                        flight.setEventPipeline(null);
+                        flight.setOrigin(resultSet.getString(3));
+                        flight.setDestination(resultSet.getString(4));
+                        flight.setDistance(resultSet.getInt(5));
+                        state = FlightState.values()[resultSet.getInt(6)];
+                    }
+                    String identifier = resultSet.getString(7);
+                    if (identifier != null) {
+                        Passenger passenger = passengers.get(identifier);
+                        if (passenger == null) {
+                            passenger = new Passenger(identifier, resultSet.getString(8), resultSet.getString(9));
+                            passenger.setVip(resultSet.getBoolean(10));
+                            passengers.put(identifier, passenger);
+                            storedPassengers.put(passenger.getIdentifierKey(), new StoredPassenger(passenger));
+                        }
+                        flight.addPassenger(passenger);
+                    }
+                }
+                if (flight != null) {
+                    flights.add(restored(flight, state));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return flights;
+    }
+
+    private AbstractFlight restored(AbstractFlight flight, FlightState state) {
+        if (state != FlightState.SCHEDULED) {
+            flight.takeOff();
+        }
+        if (state == FlightState.LANDED) {
+            flight.land();
+        }
+        stored.put(flight.getFlightNumberValue(), new StoredFlight(flight, flight.getPassengers()));
+        return flight;
+    }
+
+    private void inTransaction(SqlWork work) {
+        try {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                work.run();
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Object[] flightRow(StoredFlight flight) {
+        return new Object[]{flight.seats, flight.origin, flight.destination, flight.distance, flight.state.ordinal(),
+                flight.flightNumber};
+    }
+
+    private interface SqlWork {
+        void run() throws SQLException;
+    }
+
+    /**
+     * Rows of a statement, bound {@code rowsPerStatement} at a time and sent as a JDBC batch. The rows left over when
+     * the batch is executed are sent one by one, through the single-row form of the statement.
+     */
+    private class Rows implements AutoCloseable {
+        private final PreparedStatement statement;
+        private final PreparedStatement singleRow;
+        private final int columns;
+        private final int rowsPerStatement;
+        // the values of the rows not bound yet
+        private final Object[] values;
+        private int rows;
+        private boolean batched;
+
+        Rows(String sql, int columns) throws SQLException {
+            this.statement = connection.prepareStatement(sql);
+            this.singleRow = statement;
+            this.columns = columns;
+            this.rowsPerStatement = 1;
+            this.values = new Object[columns];
+        }
+
+        Rows(String sql, String row, int columns) throws SQLException {
+            StringBuilder multiRow = new StringBuilder(sql).append(row);
+            for (int i = 1; i < ROWS_PER_STATEMENT; i++) {
+                multiRow.append(", ").append(row);
+            }
+            this.singleRow = connection.prepareStatement(sql + row);
+            try {
+                this.statement = connection.prepareStatement(multiRow.toString());
+            } catch (SQLException e) {
+                singleRow.close();
+                throw e;
+            }
+            this.columns = columns;
+            this.rowsPerStatement = ROWS_PER_STATEMENT;
+            this.values = new Object[columns * ROWS_PER_STATEMENT];
+        }
+
+        void add(Object[] row) throws SQLException {
+            System.arraycopy(row, 0, values, rows * columns, columns);
+            if (++rows == rowsPerStatement) {
+                bind(statement, 0, rows);
+                statement.addBatch();
+                batched = true;
+                rows = 0;
+            }
+        }
+
+        void execute() throws SQLException {
+            if (batched) {
+                statement.executeBatch();
+                batched = false;
+            }
+            if (rows > 0) {
+                for (int i = 0; i < rows; i++) {
+                    bind(singleRow, i, 1);
+                    singleRow.addBatch();
+                }
+                singleRow.executeBatch();
+                rows = 0;
+            }
+        }
+
+        private void bind(PreparedStatement target, int firstRow, int count) throws SQLException {
+            int first = firstRow * columns;
+            for (int i = 0; i < count * columns; i++) {
+                Object value = values[first + i];
+                if (value == null) {
+                    target.setNull(i + 1, Types.VARCHAR);
+                } else {
+                    target.setObject(i + 1, value);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                statement.close();
+            } finally {
+                singleRow.close();
+            }
+        }
+    }
+
+    /**
+     * Rows of several statements, all executed in order as soon as they hold {@link #BATCH_SIZE} rows together.
+     */
+    private static class Batches {
+        private final Rows[] statements;
+        private int pending;
+
+        Batches(Rows... statements) {
+            this.statements = statements;
+        }
+
+        void add(Rows statement, Object... row) throws SQLException {
+            statement.add(row);
+            if (++pending >= BATCH_SIZE) {
+                execute();
+            }
+        }
+
+        void execute() throws SQLException {
+            for (Rows statement : statements) {
+                statement.execute();
+            }
+            pending = 0;
+        }
+    }
+
+    /**
+     * What the database holds for a passenger, besides the identifier and the country code that never change.
+     */
+    private static class StoredPassenger {
+        private final String name;
+        private final boolean vip;
+
+        StoredPassenger(Passenger passenger) {
+            this.name = passenger.getName();
+            this.vip = passenger.isVip();
+        }
+
+        boolean sameRow(Passenger passenger) {
+            return vip == passenger.isVip() && Objects.equals(name, passenger.getName());
+        }
+    }
+
+    /**
+     * What the database holds for a flight.
+     */
+    private static class StoredFlight {
+        private final String flightNumber;
+        private final int seats;
+        private final String origin;
+        private final String destination;
+        private final int distance;
+        private final FlightState state;
+        // sorted packed identifiers, a few bytes per passenger however many flights are remembered
+        private final int[] passengerKeys;
+
+        StoredFlight(AbstractFlight flight, Collection<Passenger> passengers) {
+            this.flightNumber = flight.getFlightNumber();
+            this.seats = flight.getSeats();
+            this.origin = flight.getOrigin();
+            this.destination = flight.getDestination();
+            this.distance = flight.getDistance();
+            this.state = flight.getState();
+            int[] keys = new int[passengers.size()];
+            int i = 0;
+            for (Passenger passenger : passengers) {
+                keys[i++] = passenger.getIdentifierKey();
+            }
+            Arrays.sort(keys);
+            this.passengerKeys = keys;
+        }
+
+        boolean hasPassenger(int key) {
+            return Arrays.binarySearch(passengerKeys, key) >= 0;
+        }
+
+        boolean sameRow(StoredFlight other) {
+            return seats == other.seats && distance == other.distance && state == other.state
+                    && Objects.equals(origin, other.origin) && Objects.equals(destination, other.destination);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+public class TablesManager {
+
+    public static void createTables(Connection connection) {
+        executeStatement(connection, "CREATE TABLE IF NOT EXISTS FLIGHTS (FLIGHT_NUMBER VARCHAR(6) PRIMARY KEY, " +
+                "SEATS INT NOT NULL, ORIGIN VARCHAR(50), DESTINATION VARCHAR(50), DISTANCE INT NOT NULL, " +
+                "STATE TINYINT NOT NULL);");
+        executeStatement(connection, "CREATE TABLE IF NOT EXISTS PASSENGERS (ID VARCHAR(11) PRIMARY KEY, " +
+                "NAME VARCHAR(100), COUNTRY_CODE CHAR(2) NOT NULL, VIP BOOLEAN NOT NULL);");
+        executeStatement(connection, "CREATE TABLE IF NOT EXISTS MANIFESTS (" +
+                "FLIGHT_NUMBER VARCHAR(6) NOT NULL REFERENCES FLIGHTS (FLIGHT_NUMBER), " +
+                "PASSENGER_ID VARCHAR(11) NOT NULL REFERENCES PASSENGERS (ID), " +
+                "PRIMARY KEY (FLIGHT_NUMBER, PASSENGER_ID));");
+    }
+
+    public static void dropTables(Connection connection) {
+        executeStatement(connection, "DROP TABLE IF EXISTS MANIFESTS;");
+        executeStatement(connection, "DROP TABLE IF EXISTS PASSENGERS;");
+        executeStatement(connection, "DROP TABLE IF EXISTS FLIGHTS;");
+    }
+
+    private static void executeStatement(Connection connection, String sql) {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,505 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport.journal;
+
+import com.manning.junitbook.testpyramid.airport.AbstractFlight;
+import com.manning.junitbook.testpyramid.airport.Flight;
+import com.manning.junitbook.testpyramid.airport.FlightNumber;
+import com.manning.junitbook.testpyramid.airport.FlightState;
+import com.manning.junitbook.testpyramid.airport.Passenger;
+import com.manning.junitbook.testpyramid.airport.PassengerValidator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+
+/**
+ * Append-only journal of the changes of the flights, made of memory-mapped segment files of a fixed size.
+ * <p>
+ * Every record starts with the same header: its length, its sequence, its type and the key of the flight number.
+ * The payload that follows has a fixed layout, except for the name of an added passenger, which is prefixed by its
+ * length. The length of a record is written last, so a record that was not fully written reads as the end of the
+ * journal. The segment is forced to the storage once every {@code forceEvery} records and when the journal is closed.
+ * <p>
+ * A snapshot stores the flights together with the last sequence it covers, and deletes the segments it makes
+ * useless. {@link #recover} loads the latest snapshot and only replays the records that follow it. The origin,
+ * destination and distance of the flights are only kept by the snapshots.
+ * <p>
+ * Appends and snapshots synchronize on the journal. A flight updated from several threads makes each change and
+ * appends its record while holding a lock of its own, so the records of the flight follow the order of its changes
+ * without serializing the other flights.
+ */
+public class FlightJournal implements AutoCloseable {
+
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+    private static final int SNAPSHOT_MAGIC = 0x464C4A53;
+    // length, sequence, type and flight number key
+    private static final int HEADER_SIZE = 4 + 8 + 1 + 4;
+    private static final int NO_NAME = 0xFFFF;
+    private static final int MAX_NAME_LENGTH = NO_NAME - 1;
+    // identifier key, country code, VIP flag and name length before the name itself
+    private static final int PASSENGER_SIZE = 4 + 2 + 1 + 2;
+    private static final int MAX_RECORD_SIZE = HEADER_SIZE + PASSENGER_SIZE + MAX_NAME_LENGTH;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int forceEvery;
+    // first sequence of every segment, in ascending order
+    private final List<Long> segments = new ArrayList<>();
+    private MappedByteBuffer segment;
+    private long nextSequence;
+    private int unforced;
+
+    private FlightJournal(Path directory, int segmentSize, int forceEvery) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.forceEvery = forceEvery;
+    }
+
+    /**
+     * Opens the journal stored in the directory, creating it if needed, and positions it after its last record.
+     */
+    public static FlightJournal open(Path directory, int segmentSize, int forceEvery) throws IOException {
+        if (segmentSize < MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException("Segment size must hold the largest record of " + MAX_RECORD_SIZE + " bytes");
+        }
+        if (forceEvery <= 0) {
+            throw new IllegalArgumentException("Records between two forces must be positive");
+        }
+        Files.createDirectories(directory);
+        FlightJournal journal = new FlightJournal(directory, segmentSize, forceEvery);
+        journal.segments.addAll(list(directory, SEGMENT_SUFFIX));
+        if (journal.segments.isEmpty()) {
+            journal.startSegment(1);
+        } else {
+            journal.resumeLastSegment();
+        }
+        return journal;
+    }
+
+    /**
+     * Returns the sequence of the last appended record, or 0 if the journal is empty.
+     */
+    public synchronized long getLastSequence() {
+        return nextSequence - 1;
+    }
+
+    /**
+     * Appends the current state of the flight and journals its future changes.
+     * The flight must not be changed by other threads while it is registered.
+     */
+    public synchronized void register(AbstractFlight flight) {
+        seatsChanged(flight);
+        for (Passenger passenger : flight.getPassengers()) {
+            passengerAdded(flight, passenger);
+        }
+        if (flight.isTakenOff()) {
+            tookOff(flight);
+        }
+        if (flight.isLanded()) {
+            landed(flight);
+        }
+        flight.setJournal(this);
+    }
+
+    public synchronized void passengerAdded(AbstractFlight flight, Passenger passenger) {
+        byte[] name = passenger.getName() == null ? null : passenger.getName().getBytes(StandardCharsets.UTF_8);
+        if (name != null && name.length > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Passenger name is too long to be journaled");
+        }
+        int start = begin(JournalRecordType.PASSENGER_ADDED, flight, PASSENGER_SIZE + (name == null ? 0 : name.length));
+        segment.putInt(passenger.getIdentifierKey());
+        segment.put((byte) passenger.getCountryCode().charAt(0));
+        segment.put((byte) passenger.getCountryCode().charAt(1));
+        segment.put((byte) (passenger.isVip() ? 1 : 0));
+        if (name == null) {
+            segment.putShort((short) NO_NAME);
+        } else {
+            segment.putShort((short) name.length);
+            segment.put(name);
+        }
+        commit(start);
+    }
+
+    public synchronized void passengerRemoved(AbstractFlight flight, Passenger passenger) {
+        int start = begin(JournalRecordType.PASSENGER_REMOVED, flight, 4);
+        segment.putInt(passenger.getIdentifierKey());
+        commit(start);
+    }
+
+    /**
+     * Appends the number of seats of the flight, read while holding the journal: when several threads change the
+     * seats, the last record holds the last value.
+     */
+    public synchronized void seatsChanged(AbstractFlight flight) {
+        int start = begin(JournalRecordType.SEATS_CHANGED, flight, 4);
+        segment.putInt(flight.getSeats());
+        commit(start);
+    }
+
+    public synchronized void tookOff(AbstractFlight flight) {
+        commit(begin(JournalRecordType.TAKE_OFF, flight, 0));
+    }
+
+    public synchronized void landed(AbstractFlight flight) {
+        commit(begin(JournalRecordType.LANDING, flight, 0));
+    }
+
+    /**
+     * Forces the appended records to the storage.
+     */
+    public synchronized void force() {
+        segment.force();
+        unforced = 0;
+    }
+
+    /**
+     * Writes a snapshot of the flights, which must include every flight of the journal, then deletes the older
+     * snapshots and the segments holding only records covered by this one.
+     * <p>
+     * Flights that are not thread-safe must be snapshot by the thread changing them.
+     *
+     * @return the sequence of the last record covered by the snapshot
+     */
+    public synchronized long snapshot(Collection<? extends AbstractFlight> flights) throws IOException {
+        force();
+        long sequence = nextSequence - 1;
+        Path temporary = directory.resolve(fileName(sequence, ".tmp"));
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(sequence);
+            out.writeInt(flights.size());
+            for (AbstractFlight flight : flights) {
+                writeFlight(out, flight);
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temporary, directory.resolve(fileName(sequence, SNAPSHOT_SUFFIX)), StandardCopyOption.ATOMIC_MOVE);
+
+        for (long older : list(directory, SNAPSHOT_SUFFIX)) {
+            if (older < sequence) {
+                Files.delete(directory.resolve(fileName(older, SNAPSHOT_SUFFIX)));
+            }
+        }
+        // a segment is useless once the next one starts right after the snapshot or earlier
+        while (segments.size() > 1 && segments.get(1) <= sequence + 1) {
+            Files.delete(directory.resolve(fileName(segments.remove(0), SEGMENT_SUFFIX)));
+        }
+        return sequence;
+    }
+
+    /**
+     * Rebuilds the flights from the latest snapshot and the records appended after it.
+     * <p>
+     * The changes are replayed without journaling them again. Once rebuilt, the flights are journaled by this journal.
+     *
+     * @param factory creates a flight from its number and its seats
+     * @return the flights, sorted by flight number
+     */
+    public synchronized <F extends AbstractFlight> Map<FlightNumber, F> recover(BiFunction<FlightNumber, Integer, F> factory)
+            throws IOException {
+        Map<FlightNumber, F> flights = new TreeMap<>();
+        Map<Integer, Passenger> passengers = new HashMap<>();
+        long snapshotSequence = 0;
+        List<Long> snapshots = list(directory, SNAPSHOT_SUFFIX);
+        if (!snapshots.isEmpty()) {
+            snapshotSequence = snapshots.get(snapshots.size() - 1);
+            readSnapshot(directory.resolve(fileName(snapshotSequence, SNAPSHOT_SUFFIX)), factory, flights, passengers);
+        }
+        for (int i = 0; i < segments.size(); i++) {
+            if (i + 1 < segments.size() && segments.get(i + 1) <= snapshotSequence + 1) {
+                continue;
+            }
+            replaySegment(segments.get(i), snapshotSequence, factory, flights, passengers);
+        }
+        for (F flight : flights.values()) {
+            flight.setJournal(this);
+        }
+        return flights;
+    }
+
+    public Map<FlightNumber, Flight> recover() throws IOException {
+        return recover(Flight::new);
+    }
+
+    @Override
+    public synchronized void close() {
+        force();
+    }
+
+    private int begin(JournalRecordType type, AbstractFlight flight, int payloadSize) {
+        if (segment.remaining() < HEADER_SIZE + payloadSize) {
+            try {
+                startSegment(nextSequence);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        int start = segment.position();
+        segment.putLong(start + 4, nextSequence);
+        segment.put(start + 12, type.getCode());
+        segment.putInt(start + 13, flight.getFlightNumberValue().getKey());
+        segment.position(start + HEADER_SIZE);
+        return start;
+    }
+
+    private void commit(int start) {
+        segment.putInt(start, segment.position() - start);
+        nextSequence++;
+        if (++unforced >= forceEvery) {
+            force();
+        }
+    }
+
+    private void startSegment(long firstSequence) throws IOException {
+        if (segment != null) {
+            force();
+        }
+        segment = map(firstSequence);
+        segments.add(firstSequence);
+        nextSequence = firstSequence;
+    }
+
+    private void resumeLastSegment() throws IOException {
+        long firstSequence = segments.get(segments.size() - 1);
+        segment = map(firstSequence);
+        nextSequence = firstSequence;
+        int position = 0;
+        while (position + HEADER_SIZE <= segmentSize) {
+            int length = segment.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            nextSequence = segment.getLong(position + 4) + 1;
+            position += length;
+        }
+        // clear what a crash may have left of a record that was not committed
+        for (int i = position; i < segmentSize; i++) {
+            segment.put(i, (byte) 0);
+        }
+        segment.position(position);
+    }
+
+    private MappedByteBuffer map(long firstSequence) throws IOException {
+        Path path = directory.resolve(fileName(firstSequence, SEGMENT_SUFFIX));
+        // the mapping stays valid once the channel is closed
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private <F extends AbstractFlight> void replaySegment(long firstSequence, long after, BiFunction<FlightNumber, Integer, F> factory,
+                                                          Map<FlightNumber, F> flights, Map<Integer, Passenger> passengers)
+            throws IOException {
+        ByteBuffer records = firstSequence == segments.get(segments.size() - 1) ? segment.duplicate() : map(firstSequence);
+        int position = 0;
+        while (position + HEADER_SIZE <= records.capacity()) {
+            int length = records.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            if (records.getLong(position + 4) > after) {
+                replay(records, position, factory, flights, passengers);
+            }
+            position += length;
+        }
+    }
+
+    private static <F extends AbstractFlight> void replay(ByteBuffer records, int position, BiFunction<FlightNumber, Integer, F> factory,
+                                                          Map<FlightNumber, F> flights, Map<Integer, Passenger> passengers) {
+        JournalRecordType type = JournalRecordType.valueOf(records.get(position + 12));
+        FlightNumber flightNumber = FlightNumber.valueOf(records.getInt(position + 13));
+        int payload = position + HEADER_SIZE;
+        AbstractFlight flight = flights.get(flightNumber);
+        if (flight == null) {
+            if (type != JournalRecordType.SEATS_CHANGED) {
+                throw new RuntimeException("Journal record " + records.getLong(position + 4)
+                        + " refers to the unknown flight " + flightNumber);
+            }
+            flights.put(flightNumber, newFlight(factory, flightNumber, records.getInt(payload)));
+            return;
+        }
+        // the changes a snapshot already contains are skipped
+        switch (type) {
+            case PASSENGER_ADDED:
+                Passenger passenger = readPassenger(records, payload, passengers);
+                if (!flight.getPassengers().contains(passenger)) {
+                    flight.addPassenger(passenger);
+                }
+                break;
+            case PASSENGER_REMOVED:
+                Passenger removed = passengers.get(records.getInt(payload));
+                if (removed != null) {
+                    // VIP passengers cannot be removed, so the record was written after the passenger lost the status
+                    flight.removePassenger(new Passenger(removed.getIdentifier(), removed.getName(), removed.getCountryCode()));
+                }
+                break;
+            case SEATS_CHANGED:
+                flight.setSeats(records.getInt(payload));
+                break;
+            case TAKE_OFF:
+                if (!flight.isTakenOff()) {
+                    flight.takeOff();
+                }
+                break;
+            case LANDING:
+                if (!flight.isLanded()) {
+                    flight.land();
+                }
+                break;
+            default:
+                throw new RuntimeException("Unsupported journal record type " + type);
+        }
+    }
+
+    private static Passenger readPassenger(ByteBuffer records, int position, Map<Integer, Passenger> passengers) {
+        int identifierKey = records.getInt(position);
+        String countryCode = PassengerValidator.isoCountryCode((char) records.get(position + 4), (char) records.get(position + 5));
+        boolean vip = records.get(position + 6) != 0;
+        int nameLength = records.getShort(position + 7) & 0xFFFF;
+        String name = null;
+        if (nameLength != NO_NAME) {
+            byte[] bytes = new byte[nameLength];
+            ByteBuffer nameBuffer = records.duplicate();
+            nameBuffer.position(position + PASSENGER_SIZE);
+            nameBuffer.get(bytes);
+            name = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return passenger(passengers, PassengerValidator.identifier(identifierKey), name, countryCode, vip);
+    }
+
+    private static void writeFlight(DataOutputStream out, AbstractFlight flight) throws IOException {
+        out.writeUTF(flight.getFlightNumber());
+        out.writeInt(flight.getSeats());
+        out.writeByte(flight.getState().ordinal());
+        writeNullable(out, flight.getOrigin());
+        writeNullable(out, flight.getDestination());
+        out.writeInt(flight.getDistance());
+        List<Passenger> passengers = new ArrayList<>(flight.getPassengers());
+        out.writeInt(passengers.size());
+        for (Passenger passenger : passengers) {
+            out.writeUTF(passenger.getIdentifier());
+            writeNullable(out, passenger.getName());
+            out.writeUTF(passenger.getCountryCode());
+            out.writeBoolean(passenger.isVip());
+        }
+    }
+
+    private static <F extends AbstractFlight> void readSnapshot(Path path, BiFunction<FlightNumber, Integer, F> factory,
+                                                                Map<FlightNumber, F> flights, Map<Integer, Passenger> passengers)
+            throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a flight snapshot: " + path);
+            }
+            in.readLong();
+            int flightCount = in.readInt();
+            for (int i = 0; i < flightCount; i++) {
+                FlightNumber flightNumber = FlightNumber.valueOf(in.readUTF());
+                F flight = newFlight(factory, flightNumber, in.readInt());
+                FlightState state = FlightState.values()[in.readByte()];
+                flight.setOrigin(readNullable(in));
+                flight.setDestination(readNullable(in));
+                flight.setDistance(in.readInt());
+                int passengerCount = in.readInt();
+                for (int j = 0; j < passengerCount; j++) {
+                    flight.addPassenger(passenger(passengers, in.readUTF(), readNullable(in), in.readUTF(), in.readBoolean()));
+                }
+                if (state != FlightState.SCHEDULED) {
+                    flight.takeOff();
+                }
+                if (state == FlightState.LANDED) {
+                    flight.land();
+                }
+                flights.put(flightNumber, flight);
+            }
+        }
+    }
+
+    private static <F extends AbstractFlight> F newFlight(BiFunction<FlightNumber, Integer, F> factory,
+                                                          FlightNumber flightNumber, int seats) {
+        F flight = factory.apply(flightNumber, seats);
+        flight.setEventPipeline(null);
+        return flight;
+    }
+
+    // the same passenger boards several flights, so every flight gets the same instance
+    private static Passenger passenger(Map<Integer, Passenger> passengers, String identifier, String name,
+                                       String countryCode, boolean vip) {
+        Passenger passenger = passengers.computeIfAbsent(PassengerValidator.identifierKey(identifier),
+                key -> new Passenger(identifier, name, countryCode));
+        passenger.setName(name);
+        passenger.setVip(vip);
+        return passenger;
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static String fileName(long sequence, String suffix) {
+        return String.format("%020d", sequence) + suffix;
+    }
+
+    private static List<Long> list(Path directory, String suffix) throws IOException {
+        List<Long> sequences = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + suffix)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                sequences.add(Long.parseLong(name.substring(0, name.length() - suffix.length())));
+            }
+        }
+        Collections.sort(sequences);
+        return sequences;
+    }
+}
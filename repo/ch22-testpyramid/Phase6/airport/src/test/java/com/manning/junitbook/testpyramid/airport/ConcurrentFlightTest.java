@@ -0,0 +1,321 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrentFlightTest {
+
+    private static List<Passenger> passengers(int count) {
+        List<Passenger> passengers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            passengers.add(new Passenger(String.format("%03d-45-%04d", 100 + i / 9000, 1 + i % 9000), "Passenger " + i, "US"));
+        }
+        return passengers;
+    }
+
+    @Test
+    public void testSingleThreadedBooking() {
+        ConcurrentFlight flight = new ConcurrentFlight("AA1234", 2);
+        List<Passenger> passengers = passengers(3);
+
+        assertTrue(flight.addPassenger(passengers.get(0)));
+        assertFalse(flight.addPassenger(passengers.get(0)));
+        assertEquals(1, flight.getPassengersNumber());
+        assertTrue(flight.addPassenger(passengers.get(1)));
+        assertThrows(RuntimeException.class, () -> flight.addPassenger(passengers.get(2)));
+        assertThrows(RuntimeException.class, () -> flight.setSeats(1));
+
+        assertTrue(flight.removePassenger(passengers.get(1)));
+        flight.setSeats(1);
+        assertEquals(1, flight.getSeats());
+        assertArrayEquals(new BoardingStatus[]{BoardingStatus.DUPLICATE, BoardingStatus.NO_SEAT},
+                flight.addPassengers(Arrays.asList(passengers.get(0), passengers.get(2))));
+    }
+
+    @Test
+    public void testWaitlistPromotion() {
+        ConcurrentFlight flight = new ConcurrentFlight("AA1234", 1);
+        List<Passenger> passengers = passengers(3);
+
+        assertEquals(BoardingStatus.ADDED, flight.tryAddPassenger(passengers.get(0)));
+        assertEquals(BoardingStatus.WAITLISTED, flight.tryAddPassenger(passengers.get(1)));
+        assertEquals(BoardingStatus.WAITLISTED, flight.tryAddPassenger(passengers.get(2)));
+        assertEquals(BoardingStatus.WAITLISTED, flight.tryAddPassenger(passengers.get(1)));
+        assertEquals(Arrays.asList(passengers.get(1), passengers.get(2)), new ArrayList<>(flight.getWaitlist()));
+        assertEquals(1, flight.getPassengersNumber());
+
+        assertTrue(flight.removeFromWaitlist(passengers.get(1)));
+        assertFalse(flight.removeFromWaitlist(passengers.get(1)));
+        // a passenger who comes back waits last, however often the old entries are left behind
+        for (int i = 0; i < 1_000; i++) {
+            assertEquals(BoardingStatus.WAITLISTED, flight.tryAddPassenger(passengers.get(1)));
+            assertEquals(Arrays.asList(passengers.get(2), passengers.get(1)), new ArrayList<>(flight.getWaitlist()));
+            assertTrue(flight.removeFromWaitlist(passengers.get(1)));
+        }
+        assertTrue(flight.removePassenger(passengers.get(0)));
+        assertEquals(Arrays.asList(passengers.get(2)), flight.page(0, 10));
+        assertTrue(flight.getWaitlist().isEmpty());
+
+        flight.setSeats(3);
+        assertEquals(BoardingStatus.ADDED, flight.tryAddPassenger(passengers.get(1)));
+        assertEquals(2, flight.getPassengersNumber());
+        assertEquals(passengers.get(1), flight.getPassengersByName().first());
+
+        Passenger vip = new Passenger("900-45-6789", "Jane", "GB");
+        vip.setVip(true);
+        assertTrue(flight.addPassenger(vip));
+        assertEquals(Collections.singleton(vip), flight.getVipPassengers());
+        passengers.get(1).setVip(true);
+        assertEquals(new HashSet<>(Arrays.asList(vip, passengers.get(1))), flight.getVipPassengers());
+        assertFalse(flight.removePassenger(passengers.get(1)));
+    }
+
+    @Test
+    public void testNoOversellingUnderContention() throws Exception {
+        int seats = 100;
+        int threads = 8;
+        ConcurrentFlight flight = new ConcurrentFlight("AA1234", seats);
+        List<Passenger> passengers = passengers(1000);
+        AtomicInteger booked = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    // every thread tries every passenger, so most attempts are duplicates or find the flight full
+                    for (Passenger passenger : passengers) {
+                        try {
+                            if (flight.addPassenger(passenger)) {
+                                booked.incrementAndGet();
+                            }
+                        } catch (RuntimeException e) {
+                            assertEquals("Not enough seats!", e.getMessage());
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(seats, booked.get());
+        assertEquals(seats, flight.getPassengersNumber());
+        assertEquals(seats, flight.getPassengers().size());
+    }
+
+    @Test
+    public void testCapacityInvariantWithAddsRemovesAndResizes() throws Exception {
+        int threads = 8;
+        ConcurrentFlight flight = new ConcurrentFlight("AA1234", 50);
+        List<Passenger> passengers = passengers(200);
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 100_000; i++) {
+                        Passenger passenger = passengers.get(random.nextInt(passengers.size()));
+                        if (random.nextBoolean()) {
+                            try {
+                                flight.addPassenger(passenger);
+                            } catch (RuntimeException ignored) {
+                                // the flight is full
+                            }
+                        } else if (random.nextInt(100) == 0) {
+                            try {
+                                flight.setSeats(25 + random.nextInt(50));
+                            } catch (RuntimeException ignored) {
+                                // too many passengers on board for the new capacity
+                            }
+                        } else {
+                            flight.removePassenger(passenger);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            Future<?> observer = executor.submit(() -> {
+                while (running.get()) {
+                    int booked = flight.getPassengersNumber();
+                    assertTrue(booked <= 75, "Booked " + booked);
+                }
+                return null;
+            });
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            running.set(false);
+            observer.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(flight.getPassengersNumber() <= flight.getSeats());
+        assertEquals(flight.getPassengers().size(), flight.getPassengersNumber());
+    }
+
+    @Test
+    public void testDuplicatesNeverCountAsPassengers() throws Exception {
+        ConcurrentFlight flight = new ConcurrentFlight("AA1234", 10);
+        List<Passenger> passengers = passengers(5);
+        passengers.forEach(flight::addPassenger);
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 100_000; i++) {
+                        Passenger passenger = passengers.get(i % passengers.size());
+                        assertFalse(flight.addPassenger(passenger));
+                        assertEquals(BoardingStatus.DUPLICATE, flight.tryAddPassenger(passenger));
+                    }
+                    return null;
+                }));
+            }
+            Future<?> observer = executor.submit(() -> {
+                while (running.get()) {
+                    // a passenger already on board never holds a second seat, even for a moment
+                    assertEquals(5, flight.getPassengersNumber());
+                }
+                return null;
+            });
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            running.set(false);
+            observer.get();
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(5, flight.getPassengers().size());
+    }
+
+    @Test
+    public void testNameIndexFollowsConcurrentBookings() throws Exception {
+        ConcurrentFlight flight = new ConcurrentFlight("AA1234", 100);
+        List<Passenger> passengers = passengers(200);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 50_000; i++) {
+                        Passenger passenger = passengers.get(random.nextInt(passengers.size()));
+                        if (random.nextBoolean()) {
+                            try {
+                                flight.addPassenger(passenger);
+                            } catch (RuntimeException ignored) {
+                                // the flight is full
+                            }
+                        } else {
+                            flight.removePassenger(passenger);
+                        }
+                        if (i == 10_000) {
+                            flight.getPassengersByName();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        List<Passenger> expected = new ArrayList<>(flight.getPassengers());
+        expected.sort(Flight.BY_NAME);
+        assertEquals(expected, new ArrayList<>(flight.getPassengersByName()));
+        assertEquals(Math.min(10, expected.size()), flight.page(0, 10).size());
+    }
+
+    @Test
+    public void testWaitlistUnderContention() throws Exception {
+        ConcurrentFlight flight = new ConcurrentFlight("AA1234", 20);
+        List<Passenger> passengers = passengers(100);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 50_000; i++) {
+                        Passenger passenger = passengers.get(random.nextInt(passengers.size()));
+                        int operation = random.nextInt(4);
+                        if (operation < 2) {
+                            flight.tryAddPassenger(passenger);
+                        } else if (operation == 2) {
+                            flight.removePassenger(passenger);
+                        } else {
+                            flight.removeFromWaitlist(passenger);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(flight.getPassengersNumber() <= flight.getSeats());
+        assertEquals(flight.getPassengers().size(), flight.getPassengersNumber());
+        if (!flight.getWaitlist().isEmpty()) {
+            assertEquals(flight.getSeats(), flight.getPassengersNumber());
+        }
+        for (Passenger passenger : flight.getWaitlist()) {
+            assertFalse(flight.getPassengers().contains(passenger));
+        }
+    }
+}
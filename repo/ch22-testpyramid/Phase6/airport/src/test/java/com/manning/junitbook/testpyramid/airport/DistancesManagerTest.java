@@ -0,0 +1,276 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DistancesManagerTest {
+
+    private final Passenger john = new Passenger("123-45-6789", "John Smith", "US");
+    private final Passenger jane = new Passenger("900-45-6789", "Jane Underwood", "GB");
+
+    @Test
+    public void testDistancesAndPoints() {
+        DistancesManager distancesManager = new DistancesManager();
+        distancesManager.addDistance(john, 2100);
+        distancesManager.addDistance(john, 1000);
+        distancesManager.addDistance(jane, 505);
+        distancesManager.calculateGivenPoints();
+
+        assertEquals(3100, distancesManager.getPassengersDistancesMap().get(john).intValue());
+        assertEquals(310, distancesManager.getPassengersPointsMap().get(john).intValue());
+        assertEquals(50, distancesManager.getPassengersPointsMap().get(jane).intValue());
+    }
+
+    @Test
+    public void testOnlyChangedPassengersAreRecalculated() {
+        List<CountingLedger> ledgers = new ArrayList<>();
+        DistancesManager distancesManager = new DistancesManager(() -> {
+            CountingLedger ledger = new CountingLedger();
+            ledgers.add(ledger);
+            return ledger;
+        });
+        CountingLedger points = ledgers.get(1);
+
+        distancesManager.addDistance(john, 2100);
+        distancesManager.addDistance(jane, 2100);
+        distancesManager.calculateGivenPoints();
+        assertEquals(2, points.puts);
+
+        distancesManager.calculateGivenPoints();
+        assertEquals(2, points.puts);
+
+        distancesManager.addDistance(john, 900);
+        distancesManager.addDistance(john, 100);
+        distancesManager.calculateGivenPoints();
+        assertEquals(3, points.puts);
+        assertEquals(310, distancesManager.getPassengersPointsMap().get(john).intValue());
+        assertEquals(210, distancesManager.getPassengersPointsMap().get(jane).intValue());
+    }
+
+    @Test
+    public void testConcurrentDistances() throws Exception {
+        DistancesManager distancesManager = DistancesManager.concurrent();
+        List<Passenger> passengers = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            passengers.add(new Passenger(String.format("123-45-%04d", 1000 + i), "Passenger " + i, "US"));
+        }
+
+        int threads = 8;
+        int rounds = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int round = 0; round < rounds; round++) {
+                        for (Passenger passenger : passengers) {
+                            distancesManager.addDistance(passenger, 10);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        distancesManager.calculateGivenPoints();
+        Map<Passenger, Integer> distances = distancesManager.getPassengersDistancesMap();
+        assertEquals(passengers.size(), distances.size());
+        for (Passenger passenger : passengers) {
+            assertEquals(threads * rounds * 10, distances.get(passenger).intValue());
+            assertEquals(threads * rounds, distancesManager.getPassengersPointsMap().get(passenger).intValue());
+        }
+    }
+
+    @Test
+    public void testConcurrentCalculationsKeepLatestPoints() throws Exception {
+        DistancesManager distancesManager = DistancesManager.concurrent();
+        List<Passenger> passengers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            passengers.add(new Passenger(String.format("123-45-%04d", 1000 + i), "Passenger " + i, "US"));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 2; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int round = 0; round < 5000; round++) {
+                        for (Passenger passenger : passengers) {
+                            distancesManager.addDistance(passenger, 10);
+                        }
+                    }
+                }));
+                futures.add(executor.submit(() -> {
+                    for (int round = 0; round < 5000; round++) {
+                        distancesManager.calculateGivenPoints();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        distancesManager.calculateGivenPoints();
+        for (Passenger passenger : passengers) {
+            assertEquals(2 * 5000, distancesManager.getPassengersPointsMap().get(passenger).intValue());
+        }
+    }
+
+    @Test
+    public void testConcurrentSnapshotIsDetached() {
+        DistancesManager distancesManager = DistancesManager.concurrent();
+        distancesManager.addDistance(john, 100);
+        Map<Passenger, Integer> snapshot = distancesManager.getPassengersDistancesMap();
+        distancesManager.addDistance(john, 100);
+
+        assertEquals(100, snapshot.get(john).intValue());
+        assertEquals(200, distancesManager.getPassengersDistancesMap().get(john).intValue());
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.put(jane, 1));
+    }
+
+    @Test
+    public void testConcurrentSnapshotIsTakenAtOneInstant() throws Exception {
+        DistancesManager distancesManager = DistancesManager.concurrent();
+        int threads = 4;
+        List<Passenger> passengers = new ArrayList<>();
+        for (int i = 0; i < 2 * threads; i++) {
+            passengers.add(new Passenger(String.format("123-45-%04d", 1000 + i), "Passenger " + i, "US"));
+        }
+        // more passengers between the pairs, so that copying the amounts takes a while
+        for (int i = 0; i < 5000; i++) {
+            distancesManager.addDistance(new Passenger(String.format("124-45-%04d", 1 + i), "Passenger " + i, "US"), 1);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Passenger first = passengers.get(2 * t);
+                Passenger second = passengers.get(2 * t + 1);
+                futures.add(executor.submit(() -> {
+                    // the second passenger always catches up with the first one right after it
+                    for (int i = 0; i < 100_000; i++) {
+                        distancesManager.addDistance(first, 1);
+                        distancesManager.addDistance(second, 1);
+                    }
+                }));
+            }
+            while (!futures.stream().allMatch(Future::isDone)) {
+                Map<Passenger, Integer> snapshot = distancesManager.getPassengersDistancesMap();
+                for (int t = 0; t < threads; t++) {
+                    int first = snapshot.getOrDefault(passengers.get(2 * t), 0);
+                    int second = snapshot.getOrDefault(passengers.get(2 * t + 1), 0);
+                    assertTrue(first == second || first == second + 1, first + " and " + second);
+                }
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(100_000, distancesManager.getPassengersDistancesMap().get(passengers.get(1)).intValue());
+    }
+
+    @Test
+    public void testMonthlyDistances() {
+        Clock clock = Clock.fixed(LocalDate.of(2021, 3, 15).atStartOfDay().toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+        DistancesManager distancesManager = new DistancesManager(ConcurrentPassengerLedger::new, 24, clock);
+        distancesManager.addDistance(john, 2100, YearMonth.of(2019, 12));
+        distancesManager.addDistance(john, 1000, YearMonth.of(2020, 6));
+        distancesManager.addDistance(john, 500);
+        distancesManager.calculateGivenPoints();
+
+        assertEquals(3600, distancesManager.getPassengersDistancesMap().get(john).intValue());
+        assertEquals(360, distancesManager.getPassengersPointsMap().get(john).intValue());
+        assertEquals(1500, distancesManager.getRollingDistance(john, 12));
+        assertEquals(1000, distancesManager.getDistance(john, YearMonth.of(2020, 1), YearMonth.of(2020, 12)));
+        assertEquals(0, distancesManager.getRollingDistance(jane, 12));
+        assertThrows(RuntimeException.class, () -> new DistancesManager().getRollingDistance(john, 12));
+    }
+
+    @Test
+    public void testConcurrentLeaderboard() throws Exception {
+        DistancesManager distancesManager = DistancesManager.concurrent();
+        distancesManager.setLeaderboard(Leaderboard.exact(10));
+        List<Passenger> passengers = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            passengers.add(new Passenger(String.format("123-45-%04d", 1000 + i), "Passenger " + i, "US"));
+        }
+
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int round = 0; round < 100; round++) {
+                        for (int i = 0; i < passengers.size(); i++) {
+                            distancesManager.addDistance(passengers.get(i), i + 1);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        List<Map.Entry<Passenger, Long>> leaders = distancesManager.getLeaderboard().getLeaders();
+        assertEquals(10, leaders.size());
+        for (int i = 0; i < leaders.size(); i++) {
+            assertEquals(passengers.get(99 - i), leaders.get(i).getKey());
+            assertEquals(threads * 100 * (100 - i), leaders.get(i).getValue().longValue());
+        }
+    }
+
+    private static class CountingLedger extends HashMapPassengerLedger {
+        private int puts;
+
+        @Override
+        public void put(Passenger passenger, int amount) {
+            puts++;
+            super.put(passenger, amount);
+        }
+    }
+}
@@ -20,9 +20,8 @@
  */
 package com.manning.junitbook.testpyramid.airport;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Paths;
 
 public class FlightBuilderUtil {
 
@@ -32,22 +31,8 @@ public class FlightBuilderUtil {
         flight.setDestination("Bucharest");
         flight.setDistance(2100);
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
-            String line;
-            do {
-                line = reader.readLine();
-                if (line != null) {
-                    String[] passengerString = line.split(";");
-                    Passenger passenger = new Passenger(passengerString[0].trim(), passengerString[1].trim(), passengerString[2].trim());
-                    if (passengerString.length == 4) {
-                        if ("Y".equals(passengerString[3].trim())) {
-                            passenger.setVip(true);
-                        }
-                    }
-                    flight.addPassenger(passenger);
-                }
-            } while (line != null);
-
+        for (Passenger passenger : new ManifestLoader().loadPassengers(Paths.get(fileName))) {
+            flight.addPassenger(passenger);
         }
 
         return flight;
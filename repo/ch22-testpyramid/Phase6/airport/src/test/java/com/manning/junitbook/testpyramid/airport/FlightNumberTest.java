@@ -0,0 +1,68 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FlightNumberTest {
+
+    @Test
+    public void testParseMatchesRegularExpression() {
+        Pattern pattern = Pattern.compile("^[A-Z]{2}\\d{3,4}$");
+        String[] samples = {"AA123", "AA1234", "ZZ0000", "AA12", "AA12345", "aa123", "A1123", "AA12a", "", "AA 123"};
+        for (String sample : samples) {
+            assertEquals(pattern.matcher(sample).matches(), FlightNumber.isValid(sample), sample);
+        }
+        assertThrows(RuntimeException.class, () -> FlightNumber.valueOf("AA12"));
+    }
+
+    @Test
+    public void testFlightNumbersAreInterned() {
+        FlightNumber flightNumber = FlightNumber.valueOf("AA1234");
+        assertSame(flightNumber, FlightNumber.valueOf(new String("AA1234")));
+        assertEquals("AA1234", flightNumber.toString());
+        assertEquals("AA", flightNumber.getCarrier());
+        assertEquals(1234, flightNumber.getNumber());
+    }
+
+    @Test
+    public void testThreeAndFourDigitNumbersAreDistinct() {
+        FlightNumber threeDigits = FlightNumber.valueOf("AA012");
+        FlightNumber fourDigits = FlightNumber.valueOf("AA0012");
+        assertNotEquals(threeDigits, fourDigits);
+        assertNotEquals(threeDigits.getKey(), fourDigits.getKey());
+        assertEquals(12, threeDigits.getNumber());
+        assertEquals(12, fourDigits.getNumber());
+    }
+
+    @Test
+    public void testFlightsCompareOnFlightNumber() {
+        Flight flight = new Flight("AA1234", 50);
+        assertEquals(flight, new Flight("AA1234", 100));
+        assertEquals(flight.hashCode(), new Flight("AA1234", 100).hashCode());
+        assertTrue(flight.compareTo(new Flight("AB1234", 50)) < 0);
+        assertTrue(flight.compareTo(new Flight("AA1235", 50)) < 0);
+    }
+}
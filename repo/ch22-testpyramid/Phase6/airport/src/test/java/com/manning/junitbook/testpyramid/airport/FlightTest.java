@@ -20,9 +20,21 @@
  */
 package com.manning.junitbook.testpyramid.airport;
 
+import com.manning.junitbook.testpyramid.airport.events.FlightEventPipeline;
+import com.manning.junitbook.testpyramid.airport.events.FlightEventType;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -91,4 +103,221 @@ public class FlightTest {
         flight.land();
         assertThrows(RuntimeException.class, () -> flight.setDestination("Sibiu"));
     }
+
+    @Test
+    public void testIllegalTransitions() {
+        Flight flight = new Flight("AA1234", 50);
+        assertEquals(FlightState.SCHEDULED, flight.getState());
+        assertThrows(RuntimeException.class, flight::land);
+        flight.takeOff();
+        assertEquals(FlightState.TAKEN_OFF, flight.getState());
+        assertThrows(RuntimeException.class, flight::takeOff);
+        flight.land();
+        assertEquals(FlightState.LANDED, flight.getState());
+        assertThrows(RuntimeException.class, flight::takeOff);
+        assertThrows(RuntimeException.class, flight::land);
+    }
+
+    @Test
+    public void testIllegalTransitionsThrowAndPublishNothing() {
+        FlightEventPipeline pipeline = new FlightEventPipeline(16);
+        List<FlightEventType> events = new ArrayList<>();
+        pipeline.addListener(event -> events.add(event.getType()));
+        ConcurrentFlight flight = new ConcurrentFlight("AA1234", 50);
+        flight.setEventPipeline(pipeline);
+
+        RuntimeException exception = assertThrows(RuntimeException.class, flight::land);
+        assertEquals("Flight cannot go from SCHEDULED to LANDED!", exception.getMessage());
+        assertEquals(FlightState.SCHEDULED, flight.getState());
+        flight.takeOff();
+        exception = assertThrows(RuntimeException.class, flight::takeOff);
+        assertEquals("Flight cannot go from TAKEN_OFF to TAKEN_OFF!", exception.getMessage());
+        flight.land();
+        assertThrows(RuntimeException.class, flight::land);
+        pipeline.close();
+
+        assertEquals(Arrays.asList(FlightEventType.TAKE_OFF, FlightEventType.LANDING), events);
+    }
+
+    @Test
+    public void testTransitionsUnderContention() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            for (int round = 0; round < 500; round++) {
+                Flight flight = new Flight("AA1234", 50);
+                AtomicInteger takeOffs = new AtomicInteger();
+                AtomicInteger landings = new AtomicInteger();
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < 2; t++) {
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        try {
+                            flight.takeOff();
+                            takeOffs.incrementAndGet();
+                        } catch (RuntimeException ignored) {
+                            // the other thread took off first
+                        }
+                        return null;
+                    }));
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        while (!flight.isLanded()) {
+                            try {
+                                flight.land();
+                                landings.incrementAndGet();
+                            } catch (RuntimeException ignored) {
+                                // not taken off yet, or the other thread landed first
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    FlightState previous = FlightState.SCHEDULED;
+                    while (previous != FlightState.LANDED) {
+                        boolean landed = flight.isLanded();
+                        boolean takenOff = flight.isTakenOff();
+                        FlightState state = flight.getState();
+                        assertTrue(state.compareTo(previous) >= 0, previous + " followed by " + state);
+                        assertTrue(!landed || takenOff);
+                        previous = state;
+                    }
+                    assertFalse(flight.isFlying());
+                    return null;
+                }));
+                start.countDown();
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+                assertEquals(1, takeOffs.get());
+                assertEquals(1, landings.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testRouteChangesRaceTakeOff() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        FlightEventPipeline pipeline = new FlightEventPipeline(4096);
+        Map<AbstractFlight, String> originsAtTakeOff = new ConcurrentHashMap<>();
+        pipeline.addListener(event -> {
+            if (event.getType() == FlightEventType.TAKE_OFF) {
+                originsAtTakeOff.put(event.getFlight(), event.getOrigin());
+            }
+        });
+        List<Flight> flights = new ArrayList<>();
+        try {
+            for (int round = 0; round < 500; round++) {
+                Flight flight = new Flight(String.format("AA%04d", round), 50);
+                flight.setOrigin("London");
+                flight.setEventPipeline(pipeline);
+                flights.add(flight);
+                CountDownLatch start = new CountDownLatch(1);
+                Future<?> takeOff = executor.submit(() -> {
+                    start.await();
+                    flight.takeOff();
+                    return null;
+                });
+                Future<?> change = executor.submit(() -> {
+                    start.await();
+                    try {
+                        flight.setOrigin("Bucharest");
+                    } catch (RuntimeException ignored) {
+                        // taken off first
+                    }
+                    return null;
+                });
+                start.countDown();
+                takeOff.get();
+                change.get();
+            }
+        } finally {
+            executor.shutdown();
+            pipeline.close();
+        }
+        // an origin accepted before the take-off is the one the take-off sees, and none is accepted afterwards
+        for (Flight flight : flights) {
+            assertEquals(flight.getOrigin(), originsAtTakeOff.get(flight));
+        }
+    }
+
+    @Test
+    public void testAddPassengers() {
+        Flight flight = new Flight("AA1234", 3);
+        Passenger john = new Passenger("123-45-6789", "John Smith", "US");
+        Passenger jane = new Passenger("900-45-6789", "Jane Underwood", "GB");
+        Passenger james = new Passenger("123-45-6790", "James Perkins", "US");
+        Passenger mary = new Passenger("900-45-6790", "Mary Calderon", "GB");
+        Passenger noah = new Passenger("123-45-6791", "Noah Graves", "US");
+        flight.addPassenger(john);
+
+        BoardingStatus[] statuses = flight.addPassengers(Arrays.asList(jane, john, jane, james, mary, noah, john));
+
+        assertArrayEquals(new BoardingStatus[]{BoardingStatus.ADDED, BoardingStatus.DUPLICATE, BoardingStatus.DUPLICATE,
+                BoardingStatus.ADDED, BoardingStatus.NO_SEAT, BoardingStatus.NO_SEAT, BoardingStatus.DUPLICATE}, statuses);
+        assertEquals(3, flight.getPassengersNumber());
+        assertTrue(flight.getPassengers().containsAll(Arrays.asList(john, jane, james)));
+    }
+
+    @Test
+    public void testPassengerViews() {
+        Flight flight = new Flight("AA1234", 10);
+        Passenger mike = new Passenger("123-45-6789", "Mike", "US");
+        Passenger john = new Passenger("123-45-6790", "John", "US");
+        Passenger james = new Passenger("900-45-6789", "James", "GB");
+        james.setVip(true);
+        flight.addPassengers(Arrays.asList(mike, john, james));
+
+        assertEquals(Arrays.asList(mike, john), flight.page(0, 2));
+        assertEquals(Arrays.asList(james), flight.page(2, 2));
+        assertTrue(flight.page(3, 2).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> flight.page(-1, 2));
+
+        assertEquals(Arrays.asList(james, john, mike), new ArrayList<>(flight.getPassengersByName()));
+        Passenger adam = new Passenger("123-45-6791", "Adam", "US");
+        flight.addPassenger(adam);
+        // an equal passenger with another name still removes the passenger on board from the index
+        flight.removePassenger(new Passenger("123-45-6789", "Somebody Else", "US"));
+        assertEquals(Arrays.asList(adam, james, john), new ArrayList<>(flight.getPassengersByName()));
+
+        List<Passenger> vips = new ArrayList<>();
+        flight.getVipPassengers().forEach(vips::add);
+        assertEquals(Arrays.asList(james), vips);
+        // a passenger made a VIP after boarding is part of the view, and cannot be removed either
+        adam.setVip(true);
+        assertEquals(2, flight.getVipPassengers().size());
+        assertTrue(flight.getVipPassengers().contains(adam));
+        assertFalse(flight.removePassenger(adam));
+    }
+
+    @Test
+    public void testWaitlist() {
+        Flight flight = new Flight("AA1234", 1);
+        Passenger mike = new Passenger("123-45-6789", "Mike", "US");
+        Passenger john = new Passenger("123-45-6790", "John", "US");
+        Passenger james = new Passenger("123-45-6791", "James", "US");
+
+        assertEquals(BoardingStatus.ADDED, flight.tryAddPassenger(mike));
+        assertEquals(BoardingStatus.DUPLICATE, flight.tryAddPassenger(mike));
+        assertEquals(BoardingStatus.WAITLISTED, flight.tryAddPassenger(john));
+        assertEquals(BoardingStatus.WAITLISTED, flight.tryAddPassenger(james));
+        assertEquals(Arrays.asList(john, james), new ArrayList<>(flight.getWaitlist()));
+
+        assertTrue(flight.removePassenger(mike));
+        assertEquals(Arrays.asList(john), new ArrayList<>(flight.getPassengers()));
+        assertEquals(Arrays.asList(james), new ArrayList<>(flight.getWaitlist()));
+
+        flight.setSeats(2);
+        assertTrue(flight.getPassengers().contains(james));
+        assertTrue(flight.getWaitlist().isEmpty());
+
+        assertEquals(BoardingStatus.WAITLISTED, flight.tryAddPassenger(mike));
+        assertTrue(flight.removeFromWaitlist(mike));
+        assertTrue(flight.removePassenger(john));
+        assertFalse(flight.getPassengers().contains(mike));
+    }
 }
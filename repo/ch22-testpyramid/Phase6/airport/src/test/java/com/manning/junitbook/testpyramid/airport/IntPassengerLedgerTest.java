@@ -0,0 +1,134 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IntPassengerLedgerTest {
+
+    private final Map<Integer, Passenger> passengers = new HashMap<>();
+
+    private Passenger passenger(int i) {
+        Passenger passenger = new Passenger(String.format("%03d-%02d-%04d", 100 + i % 500, 10 + i / 5000 % 80, 1 + i % 5000), "Passenger " + i, "US");
+        passengers.put(passenger.getIdentifierKey(), passenger);
+        return passenger;
+    }
+
+    @Test
+    public void testIdentifierKey() {
+        assertEquals(123456789, new Passenger("123-45-6789", "John Smith", "US").getIdentifierKey());
+        assertEquals(900456789, new Passenger("900-45-6789", "Jane Underwood", "GB").getIdentifierKey());
+    }
+
+    @Test
+    public void testOnHeapLedgerMatchesHashMapLedger() {
+        assertMatchesHashMapLedger(IntPassengerLedger.onHeap(passengers::get));
+    }
+
+    @Test
+    public void testOffHeapLedgerMatchesHashMapLedger() {
+        assertMatchesHashMapLedger(IntPassengerLedger.offHeap(passengers::get, 1000));
+    }
+
+    @Test
+    public void testChangedPassengers() {
+        IntPassengerLedger ledger = IntPassengerLedger.onHeap(passengers::get);
+        for (int i = 0; i < 100; i++) {
+            ledger.add(passenger(i), 10);
+        }
+        ledger.put(passenger(200), 10);
+        Map<Passenger, Integer> changed = new HashMap<>();
+        ledger.forEachChanged(changed::put);
+        assertEquals(100, changed.size());
+        assertEquals(10, changed.get(passenger(0)).intValue());
+
+        ledger.add(passenger(1), 5);
+        ledger.add(passenger(1), 5);
+        ledger.put(passenger(2), 50);
+        changed.clear();
+        ledger.forEachChanged(changed::put);
+        assertEquals(1, changed.size());
+        assertEquals(20, changed.get(passenger(1)).intValue());
+        assertEquals(50, ledger.get(passenger(2)));
+    }
+
+    @Test
+    public void testOffHeapRehashFreesOldBuffers() {
+        BufferPoolMXBean direct = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> pool.getName().equals("direct")).findFirst().get();
+        long before = direct.getMemoryUsed();
+        IntPassengerLedger ledger = IntPassengerLedger.offHeap(passengers::get, 16);
+        for (int i = 0; i < 100_000; i++) {
+            ledger.add(passenger(i), 1);
+        }
+
+        assertEquals(100_000, ledger.size());
+        // 262,144 slots of 8 bytes; the tables outgrown on the way would add as much again
+        long used = direct.getMemoryUsed() - before;
+        assertTrue(used <= 262_144 * 8 + 4096, "Direct memory used: " + used);
+    }
+
+    @Test
+    public void testDistancesManagerWithIntLedger() {
+        DistancesManager distancesManager = new DistancesManager(() -> IntPassengerLedger.onHeap(passengers::get));
+        Passenger john = passenger(1);
+        distancesManager.addDistance(john, 2100);
+        distancesManager.addDistance(john, 2100);
+        distancesManager.calculateGivenPoints();
+
+        assertEquals(420, distancesManager.getPassengersPointsMap().get(new Passenger(john.getIdentifier(), "John Smith", "US")).intValue());
+        assertEquals(1, distancesManager.getPassengersDistancesMap().size());
+        assertSame(john, distancesManager.getPassengersDistancesMap().keySet().iterator().next());
+    }
+
+    private void assertMatchesHashMapLedger(IntPassengerLedger ledger) {
+        HashMapPassengerLedger expected = new HashMapPassengerLedger();
+        Random random = new Random(7);
+        for (int i = 0; i < 50_000; i++) {
+            Passenger passenger = passenger(random.nextInt(20_000));
+            int amount = random.nextInt(3000);
+            if (i % 10 == 0) {
+                ledger.put(passenger, amount);
+                expected.put(passenger, amount);
+            } else if (i % 10 == 5) {
+                assertEquals(expected.addAndGet(passenger, amount), ledger.addAndGet(passenger, amount));
+            } else {
+                expected.add(passenger, amount);
+                ledger.add(passenger, amount);
+                assertEquals(expected.get(passenger), ledger.get(passenger));
+            }
+        }
+        assertEquals(expected.size(), ledger.size());
+        assertEquals(expected.asMap(), ledger.asMap());
+        Passenger absent = passenger(30_000);
+        assertFalse(ledger.contains(absent));
+        assertEquals(0, ledger.get(absent));
+        assertNull(ledger.asMap().get(absent));
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LeaderboardTest {
+
+    @Test
+    public void testExactLeadersMatchFullSort() {
+        Random random = new Random(42);
+        List<Passenger> passengers = passengers(1000);
+        Map<Passenger, Long> totals = new HashMap<>();
+        Leaderboard leaderboard = Leaderboard.exact(20);
+
+        for (int i = 0; i < 50_000; i++) {
+            Passenger passenger = passengers.get(random.nextInt(passengers.size()));
+            int distance = random.nextInt(5000);
+            leaderboard.record(passenger, distance, totals.merge(passenger, (long) distance, Long::sum));
+
+            if (i % 5000 == 0) {
+                assertEquals(sortedTotals(totals, 20), leaderboard.getLeaders().stream()
+                        .map(Map.Entry::getValue).collect(Collectors.toList()));
+            }
+        }
+        for (Map.Entry<Passenger, Long> leader : leaderboard.getLeaders()) {
+            assertEquals(totals.get(leader.getKey()), leader.getValue());
+        }
+        assertEquals(sortedTotals(totals, 20), leaderboard.getLeaders().stream()
+                .map(Map.Entry::getValue).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testExactLeaderboardIgnoresStaleTotals() {
+        Passenger john = new Passenger("123-45-6789", "John Smith", "US");
+        Leaderboard leaderboard = Leaderboard.exact(1);
+        leaderboard.record(john, 100, 300);
+        leaderboard.record(john, 100, 200);
+
+        assertEquals(300, leaderboard.getLeaders().get(0).getValue().longValue());
+        assertThrows(IllegalArgumentException.class, () -> Leaderboard.exact(0));
+    }
+
+    @Test
+    public void testApproximateLeadersFindHeavyFlyers() {
+        Random random = new Random(42);
+        List<Passenger> passengers = passengers(20_000);
+        Map<Passenger, Long> totals = new HashMap<>();
+        Leaderboard leaderboard = Leaderboard.approximate(10, 0.001, 0.01);
+
+        long sum = 0;
+        for (int i = 0; i < 200_000; i++) {
+            // the first 10 passengers fly about 100 times more than the others
+            Passenger passenger = i % 2 == 0 ? passengers.get(random.nextInt(10))
+                    : passengers.get(10 + random.nextInt(passengers.size() - 10));
+            int distance = 1 + random.nextInt(1000);
+            totals.merge(passenger, (long) distance, Long::sum);
+            leaderboard.record(passenger, distance, 0);
+            sum += distance;
+        }
+
+        assertTrue(leaderboard.isApproximate());
+        List<Map.Entry<Passenger, Long>> leaders = leaderboard.getLeaders();
+        assertEquals(10, leaders.size());
+        for (Map.Entry<Passenger, Long> leader : leaders) {
+            assertTrue(passengers.indexOf(leader.getKey()) < 10, leader.getKey().toString());
+            long total = totals.get(leader.getKey());
+            assertTrue(leader.getValue() >= total);
+            assertTrue(leader.getValue() <= total + 0.001 * sum);
+        }
+    }
+
+    @Test
+    public void testConcurrentApproximateLeadersNeverUnderestimate() throws Exception {
+        List<Passenger> passengers = passengers(1000);
+        Leaderboard leaderboard = Leaderboard.approximate(10, 0.001, 0.01);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 50_000; i++) {
+                    // every thread adds to the same passengers, the first 10 of them 10 times as much
+                    Passenger passenger = passengers.get(i % passengers.size());
+                    leaderboard.record(passenger, passengers.indexOf(passenger) < 10 ? 100 : 10, 0);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        List<Map.Entry<Passenger, Long>> leaders = leaderboard.getLeaders();
+        assertEquals(10, leaders.size());
+        for (Map.Entry<Passenger, Long> leader : leaders) {
+            assertTrue(passengers.indexOf(leader.getKey()) < 10, leader.getKey().toString());
+            // each of the 4 threads gave every heavy flyer 50 times 100
+            assertTrue(leader.getValue() >= 4 * 50 * 100, leader.getValue().toString());
+        }
+    }
+
+    @Test
+    public void testCountMinSketchBounds() {
+        CountMinSketch sketch = new CountMinSketch(0.01, 0.01);
+        assertEquals(512, sketch.getWidth());
+        assertEquals(5, sketch.getDepth());
+
+        Random random = new Random(42);
+        long[] totals = new long[10_000];
+        for (int i = 0; i < 100_000; i++) {
+            int key = random.nextInt(totals.length);
+            totals[key] += 10;
+            sketch.add(key, 10);
+        }
+        int overestimated = 0;
+        for (int key = 0; key < totals.length; key++) {
+            long estimate = sketch.estimate(key);
+            assertTrue(estimate >= totals[key]);
+            if (estimate > totals[key] + 0.01 * 1_000_000) {
+                overestimated++;
+            }
+        }
+        assertTrue(overestimated <= 0.01 * totals.length, overestimated + " keys overestimated");
+        assertThrows(IllegalArgumentException.class, () -> new CountMinSketch(0, 0.01));
+    }
+
+    private static List<Passenger> passengers(int count) {
+        List<Passenger> passengers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            passengers.add(new Passenger(String.format("%03d-%02d-%04d", 100 + i / 9999 % 800, 10 + i / 9999 / 800, 1 + i % 9999),
+                    "Passenger " + i, "US"));
+        }
+        return passengers;
+    }
+
+    private static List<Long> sortedTotals(Map<Passenger, Long> totals, int limit) {
+        return totals.values().stream().sorted((a, b) -> Long.compare(b, a)).limit(limit).collect(Collectors.toList());
+    }
+}
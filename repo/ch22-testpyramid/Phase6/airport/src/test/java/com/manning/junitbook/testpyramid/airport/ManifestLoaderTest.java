@@ -0,0 +1,124 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ManifestLoaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testLoadMatchesLineByLineParsing() throws IOException {
+        Path file = Paths.get("src/test/resources/flights_information.csv");
+        List<Passenger> passengers = new ManifestLoader().loadPassengers(file);
+
+        List<Passenger> expected = parseLineByLine(file);
+        assertEquals(expected, passengers);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).toString(), passengers.get(i).toString());
+            assertEquals(expected.get(i).isVip(), passengers.get(i).isVip());
+        }
+        assertTrue(passengers.get(0).isVip());
+    }
+
+    @Test
+    public void testLoadFlight() throws IOException {
+        Flight flight = new ManifestLoader().loadFlight("AA1234", 50, Paths.get("src/test/resources/flights_information.csv"));
+        assertEquals(50, flight.getPassengersNumber());
+    }
+
+    @Test
+    public void testParallelChunksKeepFileOrder() throws IOException {
+        Path file = tempDir.resolve("manifest.csv");
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            boolean us = i % 2 == 0;
+            lines.add(String.format("%d%02d-%02d-%04d ;  Passenger Nº %d;%s%s", us ? 1 : 9, i % 100, 10 + i / 9999 % 90,
+                    1 + i % 9999, i, us ? "US" : " GB ", i % 7 == 0 ? "; Y" : ""));
+        }
+        Files.write(file, String.join("\r\n", lines).getBytes(StandardCharsets.UTF_8));
+
+        List<Passenger> passengers = new ManifestLoader(8).loadPassengers(file);
+
+        assertEquals(lines.size(), passengers.size());
+        for (int i = 0; i < lines.size(); i++) {
+            Passenger passenger = passengers.get(i);
+            assertEquals("Passenger Nº " + i, passenger.getName());
+            assertEquals(i % 2 == 0 ? "US" : "GB", passenger.getCountryCode());
+            assertEquals(i % 7 == 0, passenger.isVip());
+        }
+    }
+
+    @Test
+    public void testRegistrySharesPassengersAcrossManifests() throws IOException {
+        Path first = tempDir.resolve("first.csv");
+        Path second = tempDir.resolve("second.csv");
+        Files.write(first, "123-45-6789; John Smith; US\n900-45-6789; Jane Doe; GB\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(second, "900-45-6789; Jane Doe; GB; Y\n123-45-6790; James Perkins; US\n".getBytes(StandardCharsets.UTF_8));
+        PassengerRegistry registry = new PassengerRegistry();
+        ManifestLoader loader = new ManifestLoader(2, registry);
+
+        List<Passenger> firstPassengers = loader.loadPassengers(first);
+        List<Passenger> secondPassengers = loader.loadPassengers(second);
+
+        assertSame(firstPassengers.get(1), secondPassengers.get(0));
+        assertTrue(firstPassengers.get(1).isVip());
+        assertSame(registry.get("123-45-6790"), secondPassengers.get(1));
+        assertEquals(3, registry.size());
+    }
+
+    @Test
+    public void testInvalidLine() throws IOException {
+        Path file = tempDir.resolve("invalid.csv");
+        Files.write(file, "123-45-6789; John Smith; US\n123-45-6790; James Perkins\n".getBytes(StandardCharsets.UTF_8));
+        assertThrows(RuntimeException.class, () -> new ManifestLoader().loadPassengers(file));
+    }
+
+    private static List<Passenger> parseLineByLine(Path file) throws IOException {
+        List<Passenger> passengers = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] passengerString = line.split(";");
+                Passenger passenger = new Passenger(passengerString[0].trim(), passengerString[1].trim(), passengerString[2].trim());
+                if (passengerString.length == 4 && "Y".equals(passengerString[3].trim())) {
+                    passenger.setVip(true);
+                }
+                passengers.add(passenger);
+            }
+        }
+        return passengers;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Year;
+import java.time.YearMonth;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MonthlyDistancesTest {
+
+    private final Passenger john = new Passenger("123-45-6789", "John Smith", "US");
+    private final Passenger jane = new Passenger("900-45-6789", "Jane Underwood", "GB");
+
+    @Test
+    public void testRollingAndCalendarWindows() {
+        MonthlyDistances distances = new MonthlyDistances(24);
+        distances.add(john, YearMonth.of(2019, 11), 1_000);
+        distances.add(john, YearMonth.of(2020, 1), 2_000);
+        distances.add(john, YearMonth.of(2020, 12), 500);
+        distances.add(john, YearMonth.of(2021, 3), 300);
+
+        assertEquals(800, distances.getRollingDistance(john, YearMonth.of(2021, 3), 12));
+        assertEquals(2_800, distances.getRollingDistance(john, YearMonth.of(2021, 3), 15));
+        assertEquals(2_500, distances.getDistance(john, Year.of(2020)));
+        assertEquals(1_000, distances.getDistance(john, Year.of(2019)));
+        assertEquals(0, distances.getDistance(john, Year.of(2018)));
+        assertEquals(300, distances.getRollingDistance(john, YearMonth.of(2022, 2), 12));
+        assertEquals(0, distances.getRollingDistance(jane, YearMonth.of(2021, 3), 12));
+    }
+
+    @Test
+    public void testLongGapRollsOver() {
+        MonthlyDistances distances = new MonthlyDistances(12);
+        distances.add(john, YearMonth.of(2010, 5), 1_000);
+        distances.add(john, YearMonth.of(2030, 5), 200);
+
+        assertEquals(200, distances.getRollingDistance(john, YearMonth.of(2030, 5), 12));
+        assertEquals(0, distances.getRollingDistance(john, YearMonth.of(2030, 4), 11));
+        assertThrows(IllegalArgumentException.class, () -> distances.getDistance(john, Year.of(2010)));
+        assertThrows(IllegalArgumentException.class, () -> distances.getRollingDistance(john, YearMonth.of(2030, 5), 13));
+        assertThrows(IllegalArgumentException.class, () -> distances.getRollingDistance(john, YearMonth.of(2030, 5), 0));
+        assertThrows(IllegalArgumentException.class, () -> new MonthlyDistances(0));
+    }
+
+    @Test
+    public void testWindowsMatchFullHistory() {
+        int retainedMonths = 18;
+        MonthlyDistances distances = new MonthlyDistances(retainedMonths);
+        TreeMap<YearMonth, Long> history = new TreeMap<>();
+        Random random = new Random(42);
+        YearMonth latest = YearMonth.of(2015, 1);
+        for (int i = 0; i < 5_000; i++) {
+            if (random.nextInt(10) == 0) {
+                latest = latest.plusMonths(1 + random.nextInt(3));
+            }
+            // mostly the current month, sometimes a late landing, possibly older than the retained months
+            YearMonth month = random.nextInt(5) == 0 ? latest.minusMonths(random.nextInt(24)) : latest;
+            int distance = 1 + random.nextInt(5_000);
+            distances.add(john, month, distance);
+            history.merge(month, (long) distance, Long::sum);
+
+            YearMonth to = latest.plusMonths(random.nextInt(3) - 1);
+            YearMonth from = to.minusMonths(random.nextInt(retainedMonths - 1));
+            long expected = history.subMap(from, true, to, true).values().stream().mapToLong(Long::longValue).sum();
+            assertEquals(expected, distances.getDistance(john, from, to), from + " to " + to);
+        }
+    }
+}
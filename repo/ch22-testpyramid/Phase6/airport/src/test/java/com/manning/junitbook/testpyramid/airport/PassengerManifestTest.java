@@ -0,0 +1,137 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PassengerManifestTest {
+
+    private final Passenger john = new Passenger("123-45-6789", "John Smith", "US");
+    private final Passenger jane = new Passenger("900-45-6789", "Jane Underwood", "GB");
+    private final Passenger james = new Passenger("123-45-6790", "James Perkins", "US");
+
+    @Test
+    public void testAddAndContains() {
+        PassengerManifest manifest = new PassengerManifest();
+        assertTrue(manifest.add(john));
+        assertTrue(manifest.add(jane));
+        assertFalse(manifest.add(new Passenger("123-45-6789", "John Smith", "US")));
+        assertEquals(2, manifest.size());
+        assertTrue(manifest.contains(john));
+        assertFalse(manifest.contains(james));
+    }
+
+    @Test
+    public void testSeatsAreReusedAfterRemoval() {
+        PassengerManifest manifest = new PassengerManifest();
+        manifest.add(john);
+        manifest.add(jane);
+        assertEquals(0, manifest.seatOf(john));
+        assertEquals(1, manifest.seatOf(jane));
+
+        assertTrue(manifest.remove(john));
+        assertFalse(manifest.remove(john));
+        assertEquals(-1, manifest.seatOf(john));
+
+        manifest.add(james);
+        assertEquals(0, manifest.seatOf(james));
+        assertEquals(1, manifest.seatOf(jane));
+    }
+
+    @Test
+    public void testIterationFollowsSeatOrder() {
+        PassengerManifest manifest = new PassengerManifest();
+        manifest.add(john);
+        manifest.add(jane);
+        manifest.add(james);
+        manifest.remove(jane);
+
+        List<Passenger> passengers = new ArrayList<>(manifest);
+        assertEquals(2, passengers.size());
+        assertSame(john, passengers.get(0));
+        assertSame(james, passengers.get(1));
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        PassengerManifest manifest = new PassengerManifest();
+        manifest.add(john);
+        manifest.add(jane);
+        Iterator<Passenger> iterator = manifest.iterator();
+        iterator.next();
+        iterator.remove();
+        assertEquals(1, manifest.size());
+        assertFalse(manifest.contains(john));
+        assertTrue(manifest.contains(jane));
+    }
+
+    @Test
+    public void testBehavesLikeHashSetUnderChurn() {
+        PassengerManifest manifest = new PassengerManifest();
+        Set<Passenger> expected = new HashSet<>();
+        List<Passenger> passengers = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            passengers.add(new Passenger(String.format("%03d-%02d-%04d", 100 + i % 500, 10 + i % 80, 1000 + i), "Passenger " + i, "US"));
+        }
+        for (int i = 0; i < passengers.size(); i++) {
+            Passenger passenger = passengers.get(i);
+            assertEquals(expected.add(passenger), manifest.add(passenger));
+            if (i % 3 == 0) {
+                Passenger removed = passengers.get(i / 2);
+                assertEquals(expected.remove(removed), manifest.remove(removed));
+            }
+        }
+        assertEquals(expected, manifest);
+        assertEquals(manifest, expected);
+    }
+
+    @Test
+    public void testPagesFollowIterationUnderChurn() {
+        PassengerManifest manifest = new PassengerManifest();
+        for (int i = 0; i < 1000; i++) {
+            manifest.add(new Passenger(String.format("123-45-%04d", 1 + i), "Passenger " + i, "US"));
+        }
+        Iterator<Passenger> iterator = manifest.iterator();
+        for (int i = 0; iterator.hasNext(); i++) {
+            iterator.next();
+            if (i % 3 != 0 && i < 700) {
+                iterator.remove();
+            }
+        }
+
+        List<Passenger> expected = new ArrayList<>(manifest);
+        List<Passenger> paged = new ArrayList<>();
+        for (int offset = 0; offset < manifest.size(); offset += 7) {
+            paged.addAll(manifest.page(offset, 7));
+        }
+        assertEquals(expected, paged);
+        assertEquals(expected.subList(233, 240), manifest.page(233, 7));
+        assertTrue(manifest.page(manifest.size(), 7).isEmpty());
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PassengerRegistryTest {
+
+    @Test
+    public void testInternReturnsTheRegisteredPassenger() {
+        PassengerRegistry registry = new PassengerRegistry();
+        Passenger passenger = registry.intern("123-45-6789", "John Smith", "US");
+
+        assertSame(passenger, registry.intern(new Passenger(new String("123-45-6789"), "John Smith", "US")));
+        assertSame(passenger, registry.intern("123-45-6789", "Other Name", "GJ"));
+        assertSame(passenger, registry.get("123-45-6789"));
+        assertNull(registry.get("123-45-6790"));
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void testConcurrentInterningKeepsOneInstance() throws Exception {
+        PassengerRegistry registry = new PassengerRegistry();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<Passenger>>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    List<Passenger> passengers = new ArrayList<>();
+                    for (int i = 0; i < 1000; i++) {
+                        passengers.add(registry.intern(String.format("123-45-%04d", 1 + i), "Passenger " + i, "US"));
+                    }
+                    return passengers;
+                }));
+            }
+            List<Passenger> first = futures.get(0).get();
+            for (Future<List<Passenger>> future : futures) {
+                List<Passenger> passengers = future.get();
+                for (int i = 0; i < passengers.size(); i++) {
+                    assertSame(first.get(i), passengers.get(i));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1000, registry.size());
+    }
+
+    @Test
+    public void testHashCodeFollowsIdentifier() {
+        Passenger passenger = new Passenger("123-45-6789", "John Smith", "US");
+        int hash = passenger.hashCode();
+        assertEquals(hash, new Passenger("123-45-6789", "James Perkins", "US").hashCode());
+
+        passenger.setIdentifier("123-45-6790");
+        assertEquals(new Passenger("123-45-6790", "John Smith", "US").hashCode(), passenger.hashCode());
+    }
+}
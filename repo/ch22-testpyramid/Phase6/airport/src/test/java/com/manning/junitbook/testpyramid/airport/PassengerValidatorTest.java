@@ -0,0 +1,111 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class PassengerValidatorTest {
+
+    private static final Pattern SSN = Pattern.compile("^(?!000|666)[0-8][0-9]{2}-(?!00)[0-9]{2}-(?!0000)[0-9]{4}$");
+    private static final Pattern NON_US = Pattern.compile("^(?!000|666)9[0-9]{2}-(?!00)[0-9]{2}-(?!0000)[0-9]{4}$");
+
+    @Test
+    public void testIdentifierRulesMatchRegularExpressions() {
+        Random random = new Random(42);
+        String[] samples = {"000-12-3456", "666-12-3456", "123-00-4567", "123-45-0000", "123-456-789",
+                "123-45-67890", "12a-45-6789", "123 45 6789", "900-45-6789", "999-99-9999", ""};
+        for (String sample : samples) {
+            assertEquals(SSN.matcher(sample).matches(), PassengerValidator.isValidIdentifier(sample, true), sample);
+            assertEquals(NON_US.matcher(sample).matches(), PassengerValidator.isValidIdentifier(sample, false), sample);
+        }
+        for (int i = 0; i < 100_000; i++) {
+            String identifier = String.format("%03d-%02d-%04d", random.nextInt(1000), random.nextInt(100), random.nextInt(10000));
+            assertEquals(SSN.matcher(identifier).matches(), PassengerValidator.isValidIdentifier(identifier, true), identifier);
+            assertEquals(NON_US.matcher(identifier).matches(), PassengerValidator.isValidIdentifier(identifier, false), identifier);
+        }
+    }
+
+    @Test
+    public void testCountryCodes() {
+        for (String country : Locale.getISOCountries()) {
+            assertTrue(PassengerValidator.isValidCountryCode(country), country);
+        }
+        assertFalse(PassengerValidator.isValidCountryCode("GJ"));
+        assertFalse(PassengerValidator.isValidCountryCode("us"));
+        assertFalse(PassengerValidator.isValidCountryCode("USA"));
+        assertFalse(PassengerValidator.isValidCountryCode(null));
+    }
+
+    @Test
+    public void testValidateAll() {
+        String[] identifiers = {"123-45-6789", "900-45-6789", "900-45-6789", "123-45-6789"};
+        String[] countryCodes = {"US", "US", "GB", "GJ"};
+        ValidationResult[] results = new ValidationResult[identifiers.length];
+
+        assertEquals(2, PassengerValidator.validateAll(identifiers, countryCodes, results));
+        assertArrayEquals(new ValidationResult[]{ValidationResult.VALID, ValidationResult.INVALID_IDENTIFIER,
+                ValidationResult.VALID, ValidationResult.INVALID_IDENTIFIER}, results);
+        assertEquals(ValidationResult.INVALID_COUNTRY_CODE, PassengerValidator.validate("900-45-6789", "GJ"));
+    }
+
+    @Test
+    public void testValidationDoesNotAllocate() {
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        assumeTrue(allocationBean.isThreadAllocatedMemorySupported() && allocationBean.isThreadAllocatedMemoryEnabled());
+
+        int rows = 10_000;
+        String[] identifiers = new String[rows];
+        String[] countryCodes = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            boolean us = i % 2 == 0;
+            identifiers[i] = String.format("%d%02d-%02d-%04d", us ? 1 : 9, i % 100, 10 + i % 90, 1 + i % 9999);
+            countryCodes[i] = us ? "US" : "GB";
+        }
+        ValidationResult[] results = new ValidationResult[rows];
+        for (int i = 0; i < 20; i++) {
+            PassengerValidator.validateAll(identifiers, countryCodes, results);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = allocationBean.getThreadAllocatedBytes(threadId);
+        int valid = 0;
+        for (int i = 0; i < 100; i++) {
+            valid += PassengerValidator.validateAll(identifiers, countryCodes, results);
+        }
+        long allocated = allocationBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(100 * rows, valid);
+        assertTrue(Arrays.stream(results).allMatch(result -> result == ValidationResult.VALID));
+        // a single allocation per validated passenger would already amount to megabytes
+        assertTrue(allocated < 64 * 1024, "Allocated " + allocated + " bytes for " + 100 * rows + " passengers");
+    }
+}
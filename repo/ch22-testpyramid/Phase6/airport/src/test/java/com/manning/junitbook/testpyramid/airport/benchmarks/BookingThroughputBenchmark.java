@@ -0,0 +1,104 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport.benchmarks;
+
+import com.manning.junitbook.testpyramid.airport.AbstractFlight;
+import com.manning.junitbook.testpyramid.airport.ConcurrentFlight;
+import com.manning.junitbook.testpyramid.airport.Flight;
+import com.manning.junitbook.testpyramid.airport.Passenger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Measures booking throughput from several threads, for a {@link ConcurrentFlight}
+ * and for a {@link Flight} guarded by a single lock. Every operation adds or removes a random passenger.
+ * Run with: {@code java -cp target/classes:target/test-classes ...BookingThroughputBenchmark [threads] [seats] [seconds]}
+ */
+public class BookingThroughputBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int seats = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        List<Passenger> passengers = new ArrayList<>();
+        for (int i = 0; i < 2 * seats; i++) {
+            passengers.add(new Passenger(String.format("%03d-45-%04d", 100 + i / 9000, 1 + i % 9000), "Passenger " + i, "US"));
+        }
+
+        Flight locked = new Flight("AA1234", seats);
+        ConcurrentFlight concurrent = new ConcurrentFlight("AA1235", seats);
+
+        for (int run = 0; run < 2; run++) {
+            report("synchronized", threads, seconds, run(threads, seconds, passengers, passenger -> {
+                synchronized (locked) {
+                    book(locked, passenger);
+                }
+            }));
+            report("concurrent", threads, seconds, run(threads, seconds, passengers, passenger -> book(concurrent, passenger)));
+        }
+    }
+
+    private static void book(AbstractFlight flight, Passenger passenger) {
+        if (flight.removePassenger(passenger) || flight.getPassengersNumber() >= flight.getSeats()) {
+            return;
+        }
+        try {
+            flight.addPassenger(passenger);
+        } catch (RuntimeException e) {
+            // another thread took the last seat
+        }
+    }
+
+    private static long run(int threads, int seconds, List<Passenger> passengers, Consumer<Passenger> booking)
+            throws InterruptedException {
+        long[] operations = new long[threads];
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long count = 0;
+                while ((count & 1023) != 0 || System.nanoTime() < deadline) {
+                    booking.accept(passengers.get(random.nextInt(passengers.size())));
+                    count++;
+                }
+                operations[thread] = count;
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        long total = 0;
+        for (long count : operations) {
+            total += count;
+        }
+        return total;
+    }
+
+    private static void report(String mode, int threads, int seconds, long operations) {
+        System.out.printf("%-12s %2d threads: %,15d bookings/s%n", mode, threads, operations / seconds);
+    }
+}
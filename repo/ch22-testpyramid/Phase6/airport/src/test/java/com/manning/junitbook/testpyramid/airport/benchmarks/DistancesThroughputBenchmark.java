@@ -0,0 +1,92 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport.benchmarks;
+
+import com.manning.junitbook.testpyramid.airport.DistancesManager;
+import com.manning.junitbook.testpyramid.airport.Passenger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Measures {@code addDistance} throughput from several threads, for the concurrent {@link DistancesManager}
+ * and for a default manager guarded by a single lock.
+ * Run with: {@code java -cp target/classes:target/test-classes ...DistancesThroughputBenchmark [threads] [passengers] [seconds]}
+ */
+public class DistancesThroughputBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int passengersCount = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        List<Passenger> passengers = new ArrayList<>();
+        for (int i = 0; i < passengersCount; i++) {
+            passengers.add(new Passenger(String.format("%03d-%02d-%04d", 100 + i % 500, 10 + i / 5000 % 80, 1 + i % 5000), "Passenger " + i, "US"));
+        }
+
+        DistancesManager locked = new DistancesManager();
+        Object lock = new Object();
+        DistancesManager concurrent = DistancesManager.concurrent();
+
+        for (int run = 0; run < 2; run++) {
+            report("synchronized", threads, seconds, run(threads, seconds, passengers, (passenger, distance) -> {
+                synchronized (lock) {
+                    locked.addDistance(passenger, distance);
+                }
+            }));
+            report("concurrent", threads, seconds, run(threads, seconds, passengers, concurrent::addDistance));
+        }
+    }
+
+    private static long run(int threads, int seconds, List<Passenger> passengers, ObjIntConsumer<Passenger> addDistance)
+            throws InterruptedException {
+        long[] operations = new long[threads];
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long count = 0;
+                while ((count & 1023) != 0 || System.nanoTime() < deadline) {
+                    addDistance.accept(passengers.get(random.nextInt(passengers.size())), 1 + random.nextInt(5000));
+                    count++;
+                }
+                operations[thread] = count;
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        long total = 0;
+        for (long count : operations) {
+            total += count;
+        }
+        return total;
+    }
+
+    private static void report(String mode, int threads, int seconds, long operations) {
+        System.out.printf("%-12s %2d threads: %,15d addDistance/s%n", mode, threads, operations / seconds);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport.benchmarks;
+
+import com.manning.junitbook.testpyramid.airport.AbstractFlight;
+import com.manning.junitbook.testpyramid.airport.Flight;
+import com.manning.junitbook.testpyramid.airport.Passenger;
+import com.manning.junitbook.testpyramid.airport.jdbc.JdbcFlightRepository;
+import com.manning.junitbook.testpyramid.airport.jdbc.TablesManager;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures how long {@link JdbcFlightRepository} takes to save a fleet to an in-memory H2 database, to save it again
+ * after a few changes and to load it back.
+ * Run with: {@code java -cp target/classes:target/test-classes:<h2 jar> ...FleetPersistenceBenchmark [flights] [passengers per flight]}
+ */
+public class FleetPersistenceBenchmark {
+
+    public static void main(String[] args) throws SQLException {
+        int flightsCount = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int passengersPerFlight = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        List<Flight> flights = new ArrayList<>();
+        for (int i = 0; i < flightsCount; i++) {
+            Flight flight = new Flight(String.format("%c%c%04d", 'A' + i / 10_000 / 26 % 26, 'A' + i / 10_000 % 26, i % 10_000),
+                    passengersPerFlight + 1);
+            for (int j = 0; j < passengersPerFlight; j++) {
+                int passenger = i * passengersPerFlight + j;
+                flight.addPassenger(new Passenger(String.format("%03d-%02d-%04d", 100 + passenger / 900_000 % 800,
+                        10 + passenger / 9_999 % 90, 1 + passenger % 9_999), "Passenger " + passenger, "US"));
+            }
+            flights.add(flight);
+        }
+
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:fleet", "sa", "")) {
+            TablesManager.createTables(connection);
+            JdbcFlightRepository repository = new JdbcFlightRepository(connection);
+
+            long start = System.nanoTime();
+            repository.saveAll(flights);
+            report("first save", start, flightsCount);
+
+            for (int i = 0; i < flights.size(); i += 10) {
+                Flight flight = flights.get(i);
+                flight.removePassenger(flight.getPassengers().iterator().next());
+            }
+            start = System.nanoTime();
+            repository.saveAll(flights);
+            report("incremental save", start, flightsCount);
+
+            start = System.nanoTime();
+            List<AbstractFlight> loaded = new JdbcFlightRepository(connection).findAll();
+            report("load", start, loaded.size());
+        }
+    }
+
+    private static void report(String operation, long start, int flights) {
+        System.out.printf("%-16s %,8d flights in %,6d ms%n", operation, flights, (System.nanoTime() - start) / 1_000_000);
+    }
+}
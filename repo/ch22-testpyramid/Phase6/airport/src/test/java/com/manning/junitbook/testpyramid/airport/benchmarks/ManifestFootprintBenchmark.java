@@ -0,0 +1,81 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport.benchmarks;
+
+import com.manning.junitbook.testpyramid.airport.Passenger;
+import com.manning.junitbook.testpyramid.airport.PassengerManifest;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Compares the retained heap of the flight manifests stored as {@link HashSet} and as {@link PassengerManifest}.
+ * Run with: {@code java -cp target/classes:target/test-classes ...ManifestFootprintBenchmark [flights] [passengersPerFlight]}
+ */
+public class ManifestFootprintBenchmark {
+
+    public static void main(String[] args) {
+        int flights = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int passengersPerFlight = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        List<Passenger> passengers = new ArrayList<>();
+        for (int i = 0; i < passengersPerFlight; i++) {
+            passengers.add(new Passenger(String.format("%03d-%02d-%04d", 100 + i % 500, 10 + i % 80, 1000 + i), "Passenger " + i, "US"));
+        }
+
+        long hashSetBytes = measure(flights, passengers, HashSet::new);
+        long manifestBytes = measure(flights, passengers, PassengerManifest::new);
+
+        System.out.printf("%d flights x %d passengers%n", flights, passengersPerFlight);
+        System.out.printf("HashSet           : %,d bytes (%.1f bytes/entry)%n", hashSetBytes, perEntry(hashSetBytes, flights, passengersPerFlight));
+        System.out.printf("PassengerManifest : %,d bytes (%.1f bytes/entry)%n", manifestBytes, perEntry(manifestBytes, flights, passengersPerFlight));
+    }
+
+    private static long measure(int flights, List<Passenger> passengers, Supplier<Set<Passenger>> factory) {
+        long before = usedHeap();
+        List<Set<Passenger>> manifests = new ArrayList<>(flights);
+        for (int i = 0; i < flights; i++) {
+            Set<Passenger> manifest = factory.get();
+            manifest.addAll(passengers);
+            manifests.add(manifest);
+        }
+        long after = usedHeap();
+        if (manifests.size() != flights) {
+            throw new IllegalStateException();
+        }
+        return after - before;
+    }
+
+    private static double perEntry(long bytes, int flights, int passengersPerFlight) {
+        return (double) bytes / ((long) flights * passengersPerFlight);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport.distances;
+
+import com.manning.junitbook.testpyramid.airport.DistancesManager;
+import com.manning.junitbook.testpyramid.airport.Flight;
+import com.manning.junitbook.testpyramid.airport.Passenger;
+import com.manning.junitbook.testpyramid.airport.events.FlightEventPipeline;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LandingDistancesPublisherTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testLandingsFeedDistancesManager() throws Exception {
+        DistancesManager distancesManager = DistancesManager.concurrent();
+        DistancesSubscriber subscriber = new DistancesSubscriber(distancesManager, 16);
+        LandingDistancesPublisher publisher = new LandingDistancesPublisher(4, executor);
+        publisher.subscribe(subscriber);
+        FlightEventPipeline pipeline = new FlightEventPipeline(1024);
+        AtomicInteger events = new AtomicInteger();
+        pipeline.addListener(event -> events.incrementAndGet());
+
+        List<Passenger> passengers = passengers(50);
+        for (int i = 0; i < 20; i++) {
+            Flight flight = new Flight(String.format("AA%04d", i), 50);
+            flight.setEventPipeline(pipeline);
+            flight.setLandingPublisher(publisher);
+            flight.setDistance(1_000 + i);
+            for (Passenger passenger : passengers.subList(0, 10 + i)) {
+                flight.addPassenger(passenger);
+            }
+            flight.takeOff();
+            flight.land();
+        }
+        pipeline.close();
+        publisher.close();
+
+        assertTrue(subscriber.await(10, TimeUnit.SECONDS));
+        assertNull(subscriber.getError());
+        assertEquals(40, events.get());
+        assertEquals(0, publisher.getSubscribersCount());
+        // the first passenger flew the 20 flights, the last one only the last flight
+        int expected = 0;
+        for (int i = 0; i < 20; i++) {
+            expected += 1_000 + i;
+        }
+        assertEquals(expected, (int) distancesManager.getPassengersDistancesMap().get(passengers.get(0)));
+        assertEquals(1_019, (int) distancesManager.getPassengersDistancesMap().get(passengers.get(28)));
+        assertEquals(expected / 10, (int) distancesManager.getPassengersPointsMap().get(passengers.get(0)));
+        assertFalse(distancesManager.getPassengersDistancesMap().containsKey(passengers.get(29)));
+    }
+
+    @Test
+    public void testBufferHoldsBackLandings() throws Exception {
+        LandingDistancesPublisher publisher = new LandingDistancesPublisher(2, executor);
+        AtomicReference<Subscription> subscription = new AtomicReference<>();
+        AtomicInteger received = new AtomicInteger();
+        publisher.subscribe(subscriber(subscription, received));
+        awaitSubscription(subscription).request(1);
+
+        Flight flight = new Flight("AA1234", 10);
+        for (Passenger passenger : passengers(10)) {
+            flight.addPassenger(passenger);
+        }
+        AtomicInteger published = new AtomicInteger();
+        Thread landings = new Thread(() -> {
+            for (int i = 0; i < 5; i++) {
+                publisher.publish(flight);
+                published.incrementAndGet();
+            }
+        });
+        landings.start();
+
+        // one landing is being delivered and two are buffered, so the fourth one waits for room
+        long deadline = System.currentTimeMillis() + 10_000;
+        while ((published.get() < 3 || landings.getState() != Thread.State.WAITING)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        assertEquals(3, published.get());
+        assertEquals(1, received.get());
+
+        subscription.get().request(Long.MAX_VALUE);
+        landings.join(10_000);
+        assertEquals(5, published.get());
+        publisher.close();
+        while (received.get() < 50) {
+            Thread.sleep(10);
+        }
+        assertEquals(50, received.get());
+    }
+
+    @Test
+    public void testSlowSubscriberHoldsBackLandings() throws Exception {
+        LandingDistancesPublisher publisher = new LandingDistancesPublisher(1, executor);
+        AtomicReference<Subscription> subscription = new AtomicReference<>();
+        AtomicInteger received = new AtomicInteger();
+        // requests nothing at first
+        publisher.subscribe(subscriber(subscription, received));
+        List<Flight> flights = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Flight flight = new Flight(String.format("AA%04d", i), 10);
+            flight.setLandingPublisher(publisher);
+            for (Passenger passenger : passengers(3)) {
+                flight.addPassenger(passenger);
+            }
+            flight.takeOff();
+            flights.add(flight);
+        }
+        Thread landings = new Thread(() -> flights.forEach(Flight::land));
+        landings.start();
+
+        awaitSubscription(subscription);
+        landings.join(500);
+        assertTrue(landings.isAlive());
+        // the manifest is copied by the landing, so a later booking is not published
+        flights.get(0).addPassenger(new Passenger("123-45-9999", "Late", "US"));
+        subscription.get().request(Long.MAX_VALUE);
+        landings.join(10_000);
+        assertFalse(landings.isAlive());
+        publisher.close();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (publisher.getSubscribersCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(300, received.get());
+    }
+
+    @Test
+    public void testInvalidDemandFailsTheSubscription() throws Exception {
+        LandingDistancesPublisher publisher = new LandingDistancesPublisher(2, executor);
+        DistancesSubscriber subscriber = new DistancesSubscriber(DistancesManager.concurrent(), 4);
+        publisher.subscribe(subscriber);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        AtomicReference<Thread> subscribed = new AtomicReference<>();
+        publisher.subscribe(new Subscriber<PassengerDistance>() {
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscribed.set(Thread.currentThread());
+                subscription.request(0);
+            }
+
+            @Override
+            public void onNext(PassengerDistance distance) {
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                error.set(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        while (error.get() == null) {
+            Thread.sleep(10);
+        }
+        assertTrue(error.get() instanceof IllegalArgumentException);
+        // onSubscribe is delivered on the executor, like the other signals
+        assertNotSame(Thread.currentThread(), subscribed.get());
+        assertEquals(1, publisher.getSubscribersCount());
+
+        subscriber.cancel();
+        assertEquals(0, publisher.getSubscribersCount());
+        publisher.publish(new Flight("AA1234", 10));
+        publisher.close();
+        assertThrows(RuntimeException.class, () -> publisher.publish(new Flight("AA1234", 10)));
+        assertThrows(IllegalArgumentException.class, () -> new LandingDistancesPublisher(0, executor));
+    }
+
+    private static Subscriber<PassengerDistance> subscriber(AtomicReference<Subscription> subscription, AtomicInteger received) {
+        return new Subscriber<PassengerDistance>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                subscription.set(s);
+            }
+
+            @Override
+            public void onNext(PassengerDistance distance) {
+                received.incrementAndGet();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        };
+    }
+
+    private static Subscription awaitSubscription(AtomicReference<Subscription> subscription) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (subscription.get() == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return subscription.get();
+    }
+
+    private static List<Passenger> passengers(int count) {
+        List<Passenger> passengers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            passengers.add(new Passenger(String.format("123-45-%04d", 1 + i), "Passenger " + i, "US"));
+        }
+        return passengers;
+    }
+}
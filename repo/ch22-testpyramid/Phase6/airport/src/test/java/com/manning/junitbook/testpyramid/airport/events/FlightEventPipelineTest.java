@@ -0,0 +1,162 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport.events;
+
+import com.manning.junitbook.testpyramid.airport.AbstractFlight;
+import com.manning.junitbook.testpyramid.airport.Flight;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FlightEventPipelineTest {
+
+    @Test
+    public void testFlightPublishesLifecycleEvents() throws InterruptedException {
+        FlightEventPipeline pipeline = new FlightEventPipeline(16);
+        List<FlightEvent> events = Collections.synchronizedList(new ArrayList<>());
+        pipeline.addListener(events::add);
+
+        Flight flight = new Flight("AA1234", 50);
+        flight.setEventPipeline(pipeline);
+        flight.setOrigin("London");
+        flight.setDestination("Bucharest");
+        flight.takeOff();
+        flight.land();
+        pipeline.close();
+
+        assertEquals(4, events.size());
+        assertEquals(FlightEventType.ORIGIN_CHANGED, events.get(0).getType());
+        assertEquals(FlightEventType.DESTINATION_CHANGED, events.get(1).getType());
+        assertEquals(FlightEventType.TAKE_OFF, events.get(2).getType());
+        assertEquals(FlightEventType.LANDING, events.get(3).getType());
+        assertSame(flight, events.get(3).getFlight());
+        assertEquals("Flight AA1234 from London to Bucharest is taking off", events.get(2).toString());
+    }
+
+    @Test
+    public void testIdleConsumerParksUntilAnEventIsPublished() throws InterruptedException {
+        FlightEventPipeline pipeline = new FlightEventPipeline(16);
+        CountDownLatch received = new CountDownLatch(2);
+        pipeline.addListener(event -> received.countDown());
+        Thread consumer = pipeline.getConsumer();
+
+        Flight flight = new Flight("AA1234", 50);
+        flight.setEventPipeline(pipeline);
+        flight.takeOff();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (consumer.getState() != Thread.State.WAITING && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        // parked without a timeout, not polling
+        assertEquals(Thread.State.WAITING, consumer.getState());
+
+        flight.land();
+        assertTrue(received.await(10, TimeUnit.SECONDS));
+        pipeline.close();
+        assertFalse(consumer.isAlive());
+    }
+
+    @Test
+    public void testConcurrentProducersLoseNothingButDroppedEvents() throws InterruptedException {
+        FlightEventPipeline pipeline = new FlightEventPipeline(1024);
+        Map<AbstractFlight, List<FlightEventType>> received = new HashMap<>();
+        pipeline.addListener(event -> received.computeIfAbsent(event.getFlight(), flight -> new ArrayList<>()).add(event.getType()));
+
+        int producers = 4;
+        int eventsPerProducer = 50_000;
+        List<Flight> flights = new ArrayList<>();
+        int[] published = new int[producers];
+        CountDownLatch done = new CountDownLatch(producers);
+        for (int p = 0; p < producers; p++) {
+            Flight flight = new Flight("AA10" + p + "0", 50);
+            flights.add(flight);
+            int producer = p;
+            new Thread(() -> {
+                for (int i = 0; i < eventsPerProducer; i++) {
+                    FlightEventType type = i % 2 == 0 ? FlightEventType.TAKE_OFF : FlightEventType.LANDING;
+                    if (pipeline.publish(new FlightEvent(type, flight))) {
+                        published[producer]++;
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        pipeline.close();
+
+        long total = 0;
+        for (int p = 0; p < producers; p++) {
+            List<FlightEventType> types = received.getOrDefault(flights.get(p), Collections.emptyList());
+            assertEquals(published[p], types.size());
+            total += published[p];
+        }
+        assertEquals((long) producers * eventsPerProducer, total + pipeline.getDroppedEvents());
+        assertFalse(pipeline.publish(new FlightEvent(FlightEventType.TAKE_OFF, flights.get(0))));
+    }
+
+    @Test
+    public void testCloseLosesNoAcceptedEvent() throws InterruptedException {
+        for (int round = 0; round < 20; round++) {
+            FlightEventPipeline pipeline = new FlightEventPipeline(1024);
+            AtomicLong received = new AtomicLong();
+            pipeline.addListener(event -> received.incrementAndGet());
+            Flight flight = new Flight("AA1234", 50);
+
+            int producers = 4;
+            AtomicLong accepted = new AtomicLong();
+            CountDownLatch started = new CountDownLatch(producers);
+            List<Thread> threads = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                Thread thread = new Thread(() -> {
+                    started.countDown();
+                    // publishes until the pipeline refuses the events because it is closed
+                    for (int i = 0; i < 1_000_000; i++) {
+                        if (pipeline.publish(new FlightEvent(FlightEventType.TAKE_OFF, flight))) {
+                            accepted.incrementAndGet();
+                        } else if (!pipeline.getConsumer().isAlive()) {
+                            break;
+                        }
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            started.await();
+            pipeline.close();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            // every event the pipeline accepted reached the listeners before close() returned
+            assertEquals(accepted.get(), received.get());
+            assertFalse(pipeline.publish(new FlightEvent(FlightEventType.LANDING, flight)));
+        }
+    }
+}
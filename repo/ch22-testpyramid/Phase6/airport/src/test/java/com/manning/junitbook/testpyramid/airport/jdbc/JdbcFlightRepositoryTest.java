@@ -0,0 +1,205 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport.jdbc;
+
+import com.manning.junitbook.testpyramid.airport.AbstractFlight;
+import com.manning.junitbook.testpyramid.airport.ConcurrentFlight;
+import com.manning.junitbook.testpyramid.airport.Flight;
+import com.manning.junitbook.testpyramid.airport.FlightState;
+import com.manning.junitbook.testpyramid.airport.Passenger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JdbcFlightRepositoryTest {
+
+    private Connection connection;
+    private FlightRepository repository;
+
+    private final Passenger mike = new Passenger("123-45-6789", "Mike", "US");
+    private final Passenger john = new Passenger("900-45-6789", "John", "GB");
+    private final Passenger james = new Passenger("123-45-6790", null, "US");
+    private final Passenger anna = new Passenger("123-45-6791", "Anna", "US");
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:", "sa", "");
+        TablesManager.createTables(connection);
+        repository = new JdbcFlightRepository(connection);
+    }
+
+    @AfterEach
+    public void tearDown() throws SQLException {
+        TablesManager.dropTables(connection);
+        connection.close();
+    }
+
+    @Test
+    public void testSaveAndLoad() {
+        john.setVip(true);
+        Flight flight = flight("AA1234", 10, mike, john, james);
+        flight.setOrigin("London");
+        flight.setDestination("Bucharest");
+        flight.setDistance(2_100);
+        flight.takeOff();
+        repository.saveAll(Arrays.asList(flight, flight("AA1235", 5)));
+
+        FlightRepository other = new JdbcFlightRepository(connection, ConcurrentFlight::new);
+        AbstractFlight loaded = other.findByFlightNumber("AA1234");
+        assertTrue(loaded instanceof ConcurrentFlight);
+        assertEquals(10, loaded.getSeats());
+        assertEquals("London", loaded.getOrigin());
+        assertEquals("Bucharest", loaded.getDestination());
+        assertEquals(2_100, loaded.getDistance());
+        assertEquals(FlightState.TAKEN_OFF, loaded.getState());
+        assertEquals(flight.getPassengers(), loaded.getPassengers());
+        for (Passenger passenger : loaded.getPassengers()) {
+            assertEquals(passenger.equals(john), passenger.isVip());
+            assertEquals(passenger.equals(james), passenger.getName() == null);
+        }
+
+        AbstractFlight empty = other.findByFlightNumber("AA1235");
+        assertEquals(0, empty.getPassengersNumber());
+        assertNull(empty.getOrigin());
+        assertNull(other.findByFlightNumber("AA9999"));
+    }
+
+    @Test
+    public void testIncrementalSaveWritesOnlyDifferences() throws SQLException {
+        Flight flight = flight("AA1234", 3, mike, john, james);
+        repository.save(flight);
+        // a full rewrite of the manifest would bring this row back
+        execute("DELETE FROM MANIFESTS WHERE PASSENGER_ID = '" + mike.getIdentifier() + "'");
+
+        flight.removePassenger(john);
+        flight.addPassenger(anna);
+        flight.setSeats(4);
+        repository.save(flight);
+
+        assertEquals(new HashSet<>(Arrays.asList(james.getIdentifier(), anna.getIdentifier())), manifest("AA1234"));
+
+        execute("DELETE FROM MANIFESTS");
+        repository.save(flight);
+        assertEquals(new HashSet<>(), manifest("AA1234"));
+        assertEquals(4, repository.findByFlightNumber("AA1234").getSeats());
+    }
+
+    @Test
+    public void testChangedPassengersAreMergedOnEverySave() {
+        Flight flight = flight("AA1234", 3, mike, john);
+        repository.saveAll(Arrays.asList(flight, flight("AA1235", 3, mike)));
+
+        // neither passenger boards or leaves, so only the passenger rows can carry the changes
+        mike.setName("Michael");
+        john.setVip(true);
+        repository.save(flight);
+
+        AbstractFlight loaded = new JdbcFlightRepository(connection).findByFlightNumber("AA1235");
+        Passenger michael = loaded.getPassengers().iterator().next();
+        assertEquals("Michael", michael.getName());
+        for (Passenger passenger : new JdbcFlightRepository(connection).findByFlightNumber("AA1234").getPassengers()) {
+            assertEquals(passenger.equals(john), passenger.isVip());
+        }
+    }
+
+    @Test
+    public void testSaveFlightStoredByAnotherRepository() throws SQLException {
+        repository.save(flight("AA1234", 3, mike, john));
+
+        Flight flight = flight("AA1234", 4, john, anna);
+        flight.setOrigin("London");
+        new JdbcFlightRepository(connection).save(flight);
+
+        assertEquals(new HashSet<>(Arrays.asList(john.getIdentifier(), anna.getIdentifier())), manifest("AA1234"));
+        AbstractFlight loaded = repository.findByFlightNumber("AA1234");
+        assertEquals(4, loaded.getSeats());
+        assertEquals("London", loaded.getOrigin());
+    }
+
+    @Test
+    public void testFindAllSharesPassengers() {
+        List<Flight> flights = new ArrayList<>();
+        for (int i = 0; i < 2_500; i++) {
+            Flight flight = flight(String.format("AB%04d", i), 3,
+                    new Passenger(String.format("%03d-%02d-%04d", 100 + i / 9_999, 10, 1 + i % 9_999), "Passenger " + i, "US"),
+                    mike);
+            flights.add(flight);
+        }
+        repository.saveAll(flights);
+
+        List<AbstractFlight> loaded = new JdbcFlightRepository(connection).findAll();
+        assertEquals(flights.size(), loaded.size());
+        Set<Passenger> mikes = new HashSet<>();
+        for (int i = 0; i < flights.size(); i++) {
+            assertEquals(flights.get(i), loaded.get(i));
+            assertEquals(flights.get(i).getPassengers(), loaded.get(i).getPassengers());
+            loaded.get(i).getPassengers().stream().filter(mike::equals).forEach(mikes::add);
+        }
+        assertEquals(1, mikes.size());
+        assertSame(loaded.get(0).getPassengers().stream().filter(mike::equals).findFirst().get(),
+                loaded.get(1).getPassengers().stream().filter(mike::equals).findFirst().get());
+
+        repository.delete(flights.get(0));
+        assertNull(repository.findByFlightNumber(flights.get(0).getFlightNumber()));
+        assertEquals(flights.size() - 1, repository.findAll().size());
+    }
+
+    private static Flight flight(String flightNumber, int seats, Passenger... passengers) {
+        Flight flight = new Flight(flightNumber, seats);
+        for (Passenger passenger : passengers) {
+            flight.addPassenger(passenger);
+        }
+        return flight;
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.executeUpdate();
+        }
+    }
+
+    private Set<String> manifest(String flightNumber) throws SQLException {
+        Set<String> identifiers = new HashSet<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT PASSENGER_ID FROM MANIFESTS WHERE FLIGHT_NUMBER = ?")) {
+            statement.setString(1, flightNumber);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    identifiers.add(resultSet.getString(1));
+                }
+            }
+        }
+        return identifiers;
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * ========================================================================
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package com.manning.junitbook.testpyramid.airport.journal;
+
+import com.manning.junitbook.testpyramid.airport.ConcurrentFlight;
+import com.manning.junitbook.testpyramid.airport.Flight;
+import com.manning.junitbook.testpyramid.airport.FlightNumber;
+import com.manning.junitbook.testpyramid.airport.FlightState;
+import com.manning.junitbook.testpyramid.airport.Passenger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FlightJournalTest {
+
+    private static final int SEGMENT_SIZE = 1 << 17;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testRecoverFromJournal() throws IOException {
+        Passenger mike = new Passenger("123-45-6789", "Mike", "US");
+        Passenger john = new Passenger("900-45-6789", "John", "GB");
+        Passenger james = new Passenger("123-45-6790", null, "US");
+        john.setVip(true);
+        try (FlightJournal journal = FlightJournal.open(directory, SEGMENT_SIZE, 100)) {
+            Flight flight = flight("AA1234", 2);
+            flight.addPassenger(mike);
+            journal.register(flight);
+            flight.addPassenger(john);
+            flight.removePassenger(mike);
+            flight.setSeats(3);
+            flight.addPassenger(james);
+            flight.takeOff();
+            assertEquals(7, journal.getLastSequence());
+        }
+
+        try (FlightJournal journal = FlightJournal.open(directory, SEGMENT_SIZE, 100)) {
+            assertEquals(7, journal.getLastSequence());
+            Flight flight = journal.recover().get(FlightNumber.valueOf("AA1234"));
+            assertEquals(3, flight.getSeats());
+            assertEquals(FlightState.TAKEN_OFF, flight.getState());
+            assertEquals(new HashSet<>(Arrays.asList(john, james)), flight.getPassengers());
+            assertTrue(flight.getPassengers().stream().filter(john::equals).findFirst().get().isVip());
+            assertNull(flight.getPassengers().stream().filter(james::equals).findFirst().get().getName());
+
+            flight.land();
+            assertEquals(8, journal.getLastSequence());
+        }
+    }
+
+    @Test
+    public void testSnapshotReplaysOnlyTheTail() throws IOException {
+        List<Flight> flights = new ArrayList<>();
+        try (FlightJournal journal = FlightJournal.open(directory, SEGMENT_SIZE, 1000)) {
+            for (int i = 0; i < 10; i++) {
+                Flight flight = flight(String.format("AA%04d", i), 2_000);
+                journal.register(flight);
+                flights.add(flight);
+            }
+            board(flights, 0, 5_000);
+            assertTrue(files(".journal").size() > 1);
+
+            long sequence = journal.snapshot(flights);
+            assertEquals(journal.getLastSequence(), sequence);
+            assertEquals(1, files(".journal").size());
+
+            board(flights, 5_000, 8_000);
+            flights.get(0).setOrigin("London");
+            flights.get(0).takeOff();
+            flights.get(0).land();
+            journal.snapshot(flights);
+            flights.get(1).setSeats(2_500);
+            flights.get(1).takeOff();
+            board(flights, 8_000, 9_000);
+        }
+        assertEquals(1, files(".snapshot").size());
+
+        try (FlightJournal journal = FlightJournal.open(directory, SEGMENT_SIZE, 1000)) {
+            Map<FlightNumber, ConcurrentFlight> recovered = journal.recover(ConcurrentFlight::new);
+            assertEquals(flights.size(), recovered.size());
+            for (Flight flight : flights) {
+                ConcurrentFlight copy = recovered.get(flight.getFlightNumberValue());
+                assertNotNull(copy);
+                assertEquals(flight.getSeats(), copy.getSeats());
+                assertEquals(flight.getState(), copy.getState());
+                assertEquals(flight.getOrigin(), copy.getOrigin());
+                assertEquals(flight.getPassengers(), copy.getPassengers());
+            }
+        }
+    }
+
+    @Test
+    public void testUncommittedRecordIsDiscarded() throws IOException {
+        Flight flight = flight("AA1234", 10);
+        try (FlightJournal journal = FlightJournal.open(directory, SEGMENT_SIZE, 1)) {
+            journal.register(flight);
+            flight.addPassenger(new Passenger("123-45-6789", "Mike", "US"));
+        }
+        Path segment = files(".journal").get(0);
+        // a crash in the middle of a record leaves its body without its length
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            long end = 0;
+            for (int length = file.readInt(); length != 0; length = file.readInt()) {
+                end += length;
+                file.seek(end);
+            }
+            file.seek(end + 4);
+            for (int i = 0; i < 200; i++) {
+                file.writeByte(0x7F);
+            }
+        }
+
+        try (FlightJournal journal = FlightJournal.open(directory, SEGMENT_SIZE, 1)) {
+            assertEquals(2, journal.getLastSequence());
+            Flight recovered = journal.recover().get(flight.getFlightNumberValue());
+            recovered.addPassenger(new Passenger("123-45-6790", "John", "US"));
+        }
+        try (FlightJournal journal = FlightJournal.open(directory, SEGMENT_SIZE, 1)) {
+            assertEquals(3, journal.getLastSequence());
+            assertEquals(2, journal.recover().get(flight.getFlightNumberValue()).getPassengersNumber());
+        }
+    }
+
+    @Test
+    public void testConcurrentFlightJournalFollowsChanges() throws Exception {
+        ConcurrentFlight flight = new ConcurrentFlight("AA1234", 50);
+        List<Passenger> passengers = passengers(0, 100);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (FlightJournal journal = FlightJournal.open(directory, SEGMENT_SIZE, 1000)) {
+            journal.register(flight);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 20_000; i++) {
+                        Passenger passenger = passengers.get(random.nextInt(passengers.size()));
+                        if (random.nextBoolean()) {
+                            flight.tryAddPassenger(passenger);
+                        } else {
+                            flight.removePassenger(passenger);
+                            flight.removeFromWaitlist(passenger);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        try (FlightJournal journal = FlightJournal.open(directory, SEGMENT_SIZE, 1000)) {
+            assertEquals(flight.getPassengers(), journal.recover().get(flight.getFlightNumberValue()).getPassengers());
+        }
+    }
+
+    @Test
+    public void testInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class, () -> FlightJournal.open(directory, 1024, 10));
+        assertThrows(IllegalArgumentException.class, () -> FlightJournal.open(directory, SEGMENT_SIZE, 0));
+    }
+
+    private List<Path> files(String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(suffix)).collect(Collectors.toList());
+        }
+    }
+
+    private static Flight flight(String flightNumber, int seats) {
+        return new Flight(flightNumber, seats);
+    }
+
+    private static void board(List<Flight> flights, int from, int to) {
+        List<Passenger> passengers = passengers(from, to);
+        for (int i = 0; i < passengers.size(); i++) {
+            Flight flight = flights.get(i % flights.size());
+            flight.addPassenger(passengers.get(i));
+            if (i % 3 == 0) {
+                flight.removePassenger(passengers.get(i));
+            }
+        }
+    }
+
+    private static List<Passenger> passengers(int from, int to) {
+        return IntStream.range(from, to)
+                .mapToObj(i -> new Passenger(String.format("%03d-%02d-%04d", 100 + i / 10_000, 10 + i / 100 % 90, 1 + i % 9_999),
+                        "Passenger " + i, "US"))
+                .collect(Collectors.toList());
+    }
+}